@@ -1,12 +1,16 @@
 package com.dota2analyzer.analysis.config;
 
 import com.dota2analyzer.analysis.dem.DemAnalysisEnhancer;
+import com.dota2analyzer.analysis.dem.DemBatchParser;
+import com.dota2analyzer.analysis.dem.DemParseQueue;
 import com.dota2analyzer.analysis.dem.DemParseService;
+import com.dota2analyzer.analysis.dem.HeatmapAggregator;
 import com.dota2analyzer.analysis.engine.MatchAnalyzer;
 import com.dota2analyzer.analysis.service.DataServiceClient;
 import com.dota2analyzer.core.service.DotaDataProvider;
 import com.dota2analyzer.core.service.HeroDataCache;
 import com.dota2analyzer.core.service.MatchCache;
+import com.dota2analyzer.core.service.MemoryCache;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,6 +18,8 @@ import org.springframework.context.annotation.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -30,8 +36,12 @@ public class AppConfig {
     private String avoidExternalWhenCached = "true";
     private String dataServiceUrl = "http://localhost:5087";
     private String replayDir;
+    private int analysisConcurrency = 4;
     private List<Long> permanentAccounts = new ArrayList<>();
     private Db db = new Db();
+    private MemoryCacheSettings memoryCache = new MemoryCacheSettings();
+    private HeroDataSettings heroData = new HeroDataSettings();
+    private DemSettings dem = new DemSettings();
 
     public static class Db {
         private String url;
@@ -45,24 +55,86 @@ public class AppConfig {
         public void setPassword(String password) { this.password = password; }
     }
 
+    public static class MemoryCacheSettings {
+        private long maxWeight = 64L * 1024 * 1024;
+        private int ttlMinutes = 10;
+        public long getMaxWeight() { return maxWeight; }
+        public void setMaxWeight(long maxWeight) { this.maxWeight = maxWeight; }
+        public int getTtlMinutes() { return ttlMinutes; }
+        public void setTtlMinutes(int ttlMinutes) { this.ttlMinutes = ttlMinutes; }
+    }
+
+    public static class HeroDataSettings {
+        private int refreshMinutes = 60;
+        private int maxAgeHours = 30 * 24;
+        private String snapshotPath;
+        public int getRefreshMinutes() { return refreshMinutes; }
+        public void setRefreshMinutes(int refreshMinutes) { this.refreshMinutes = refreshMinutes; }
+        public int getMaxAgeHours() { return maxAgeHours; }
+        public void setMaxAgeHours(int maxAgeHours) { this.maxAgeHours = maxAgeHours; }
+        public String getSnapshotPath() { return snapshotPath; }
+        public void setSnapshotPath(String snapshotPath) { this.snapshotPath = snapshotPath; }
+    }
+
+    public static class DemSettings {
+        private int parallelism = 2;
+        private int maxQueued = 8;
+        private int waitSeconds = 20;
+        private int retentionMinutes = 10;
+        private int heatmapResolution = 64;
+        private int heatmapWindowMinutes = 10;
+        private int heatmapPathPoints = 0;
+        private int batchParallelism = 0;
+        private int batchMemoryMb = 0;
+        private int batchParseOverheadMb = 256;
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+        public int getMaxQueued() { return maxQueued; }
+        public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+        public int getWaitSeconds() { return waitSeconds; }
+        public void setWaitSeconds(int waitSeconds) { this.waitSeconds = waitSeconds; }
+        public int getRetentionMinutes() { return retentionMinutes; }
+        public void setRetentionMinutes(int retentionMinutes) { this.retentionMinutes = retentionMinutes; }
+        public int getHeatmapResolution() { return heatmapResolution; }
+        public void setHeatmapResolution(int heatmapResolution) { this.heatmapResolution = heatmapResolution; }
+        public int getHeatmapWindowMinutes() { return heatmapWindowMinutes; }
+        public void setHeatmapWindowMinutes(int heatmapWindowMinutes) { this.heatmapWindowMinutes = heatmapWindowMinutes; }
+        public int getHeatmapPathPoints() { return heatmapPathPoints; }
+        public void setHeatmapPathPoints(int heatmapPathPoints) { this.heatmapPathPoints = heatmapPathPoints; }
+        public int getBatchParallelism() { return batchParallelism; }
+        public void setBatchParallelism(int batchParallelism) { this.batchParallelism = batchParallelism; }
+        public int getBatchMemoryMb() { return batchMemoryMb; }
+        public void setBatchMemoryMb(int batchMemoryMb) { this.batchMemoryMb = batchMemoryMb; }
+        public int getBatchParseOverheadMb() { return batchParseOverheadMb; }
+        public void setBatchParseOverheadMb(int batchParseOverheadMb) { this.batchParseOverheadMb = batchParseOverheadMb; }
+    }
+
     public void setCacheOnly(String cacheOnly) { this.cacheOnly = cacheOnly; }
     public void setDisableBenchmarks(String disableBenchmarks) { this.disableBenchmarks = disableBenchmarks; }
     public void setAvoidExternalWhenCached(String avoidExternalWhenCached) { this.avoidExternalWhenCached = avoidExternalWhenCached; }
     public void setDataServiceUrl(String dataServiceUrl) { this.dataServiceUrl = dataServiceUrl; }
     public void setReplayDir(String replayDir) { this.replayDir = replayDir; }
+    public void setAnalysisConcurrency(int analysisConcurrency) { this.analysisConcurrency = analysisConcurrency; }
     public void setPermanentAccounts(List<Long> permanentAccounts) { this.permanentAccounts = permanentAccounts; }
     public void setDb(Db db) { this.db = db; }
+    public void setMemoryCache(MemoryCacheSettings memoryCache) { this.memoryCache = memoryCache; }
+    public void setHeroData(HeroDataSettings heroData) { this.heroData = heroData; }
+    public void setDem(DemSettings dem) { this.dem = dem; }
 
     @Bean
     public MatchCache matchCache() {
         Set<Long> accounts = permanentAccounts != null ? new HashSet<>(permanentAccounts) : Set.of();
         log.info("MatchCache permanent accounts: {}", accounts);
-        return new MatchCache(db.getUrl(), db.getUser(), db.getPassword(), accounts);
+        MemoryCache memory = new MemoryCache(memoryCache.getMaxWeight(), Duration.ofMinutes(memoryCache.getTtlMinutes()));
+        return new MatchCache(db.getUrl(), db.getUser(), db.getPassword(), accounts, memory);
     }
 
     @Bean
     public HeroDataCache heroDataCache(MatchCache matchCache) {
-        return new HeroDataCache(null, matchCache, true);
+        HeroDataCache heroDataCache = new HeroDataCache(null, matchCache, true,
+                Duration.ofHours(heroData.getMaxAgeHours()), heroDataSnapshotPath());
+        heroDataCache.start(Duration.ofMinutes(heroData.getRefreshMinutes()));
+        return heroDataCache;
     }
 
     @Bean
@@ -74,7 +146,7 @@ public class AppConfig {
     public MatchAnalyzer matchAnalyzer(DotaDataProvider dataProvider, HeroDataCache heroDataCache, MatchCache matchCache) {
         return new MatchAnalyzer(dataProvider, heroDataCache, matchCache,
                 Boolean.parseBoolean(cacheOnly), Boolean.parseBoolean(disableBenchmarks),
-                Boolean.parseBoolean(avoidExternalWhenCached));
+                Boolean.parseBoolean(avoidExternalWhenCached), analysisConcurrency);
     }
 
     @Bean
@@ -83,8 +155,28 @@ public class AppConfig {
         return new DemParseService(dir);
     }
 
+    @Bean
+    public DemParseQueue demParseQueue(DemParseService demParseService) {
+        return new DemParseQueue(demParseService, dem.getParallelism(), dem.getMaxQueued(),
+                Duration.ofMinutes(dem.getRetentionMinutes()), Duration.ofSeconds(dem.getWaitSeconds()));
+    }
+
+    @Bean
+    public DemBatchParser demBatchParser(DemParseService demParseService) {
+        // Default to half the heap so batch parses leave room for the interactive queue and request handling
+        long budget = dem.getBatchMemoryMb() > 0 ? dem.getBatchMemoryMb() * 1024L * 1024 : Runtime.getRuntime().maxMemory() / 2;
+        return new DemBatchParser(demParseService, dem.getBatchParallelism(), budget,
+                dem.getBatchParseOverheadMb() * 1024L * 1024, Duration.ofMinutes(dem.getRetentionMinutes()));
+    }
+
     @Bean
     public DemAnalysisEnhancer demAnalysisEnhancer() {
-        return new DemAnalysisEnhancer();
+        return new DemAnalysisEnhancer(new HeatmapAggregator(dem.getHeatmapResolution(),
+                dem.getHeatmapWindowMinutes() * 60 * 30, dem.getHeatmapPathPoints()));
+    }
+
+    private Path heroDataSnapshotPath() {
+        String path = heroData.getSnapshotPath();
+        return Path.of(path != null ? path : System.getProperty("user.home") + "/.dota2analyzer/hero-data.json");
     }
 }
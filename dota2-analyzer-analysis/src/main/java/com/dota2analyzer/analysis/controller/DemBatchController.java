@@ -0,0 +1,73 @@
+package com.dota2analyzer.analysis.controller;
+
+import com.dota2analyzer.analysis.dem.DemBatchParser;
+import com.dota2analyzer.analysis.dem.DemParseProfile;
+import com.dota2analyzer.core.model.opendota.RecentMatch;
+import com.dota2analyzer.core.service.MatchCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/dem/batches")
+public class DemBatchController {
+
+    private static final Logger log = LoggerFactory.getLogger(DemBatchController.class);
+
+    private final DemBatchParser batchParser;
+    private final MatchCache cache;
+
+    public DemBatchController(DemBatchParser batchParser, MatchCache cache) {
+        this.batchParser = batchParser;
+        this.cache = cache;
+    }
+
+    /**
+     * Parse the given matches, or with {@code accountId} every match in the account's cached history,
+     * in the background. Replays that are not downloaded are counted as missing.
+     */
+    @PostMapping
+    public ResponseEntity<?> submitBatch(
+            @RequestParam(required = false) List<Long> matchIds,
+            @RequestParam(required = false) Long accountId,
+            @RequestParam(required = false, defaultValue = "full") String profile,
+            @RequestParam(required = false, defaultValue = "0") int sampleInterval) {
+        DemParseProfile parseProfile = DemParseProfile.byName(profile);
+        if (parseProfile == null) {
+            return ResponseEntity.badRequest().body(Map.of("message", "\u672A\u77E5\u7684\u56DE\u653E\u89E3\u6790\u914D\u7F6E: " + profile));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        if (matchIds != null) {
+            ids.addAll(matchIds);
+        }
+        if (accountId != null) {
+            List<RecentMatch> history = cache.getRecentMatches(accountId, null);
+            if (history != null) {
+                history.forEach(match -> ids.add(match.getMatchId()));
+            }
+        }
+        if (ids.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "\u6CA1\u6709\u53EF\u89E3\u6790\u7684\u5BF9\u5C40"));
+        }
+
+        log.info("POST DEM batch Matches={} AccountId={} Profile={}", ids.size(), accountId, profile);
+        DemBatchParser.Batch batch = batchParser.submit(ids, parseProfile.withSampleInterval(sampleInterval));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(batch.toMap());
+    }
+
+    @GetMapping("/{batchId}")
+    public ResponseEntity<?> batchStatus(@PathVariable String batchId) {
+        DemBatchParser.Batch batch = batchParser.getBatch(batchId);
+        if (batch == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "\u672A\u627E\u5230\u6279\u91CF\u89E3\u6790\u4EFB\u52A1"));
+        }
+        return ResponseEntity.ok(batch.toMap());
+    }
+}
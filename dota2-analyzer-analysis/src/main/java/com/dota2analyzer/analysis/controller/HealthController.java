@@ -1,5 +1,8 @@
 package com.dota2analyzer.analysis.controller;
 
+import com.dota2analyzer.analysis.dem.DemBatchParser;
+import com.dota2analyzer.analysis.dem.DemParseQueue;
+import com.dota2analyzer.core.service.MatchCache;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -9,8 +12,19 @@ import java.util.Map;
 @RestController
 public class HealthController {
 
+    private final MatchCache cache;
+    private final DemParseQueue demParseQueue;
+    private final DemBatchParser demBatchParser;
+
+    public HealthController(MatchCache cache, DemParseQueue demParseQueue, DemBatchParser demBatchParser) {
+        this.cache = cache;
+        this.demParseQueue = demParseQueue;
+        this.demBatchParser = demBatchParser;
+    }
+
     @GetMapping("/api/health")
     public Map<String, Object> health() {
-        return Map.of("status", "ok", "time", Instant.now().toString());
+        return Map.of("status", "ok", "time", Instant.now().toString(), "memoryCache", cache.getMemoryStats(),
+                "demQueue", demParseQueue.getStats(), "demBatch", demBatchParser.getStats());
     }
 }
@@ -1,7 +1,8 @@
 package com.dota2analyzer.analysis.controller;
 
 import com.dota2analyzer.analysis.dem.DemAnalysisEnhancer;
-import com.dota2analyzer.analysis.dem.DemParseService;
+import com.dota2analyzer.analysis.dem.DemParseProfile;
+import com.dota2analyzer.analysis.dem.DemParseQueue;
 import com.dota2analyzer.analysis.dem.model.DemParseResult;
 import com.dota2analyzer.analysis.engine.MatchAnalyzer;
 import com.dota2analyzer.core.model.analysis.MatchAnalysisResult;
@@ -12,6 +13,7 @@ import com.dota2analyzer.core.service.DotaDataProvider;
 import com.dota2analyzer.core.service.MatchCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/matches")
@@ -29,15 +32,15 @@ public class MatchController {
     private final MatchAnalyzer analyzer;
     private final MatchCache cache;
     private final DotaDataProvider dataProvider;
-    private final DemParseService demParseService;
+    private final DemParseQueue demParseQueue;
     private final DemAnalysisEnhancer demEnhancer;
 
     public MatchController(MatchAnalyzer analyzer, MatchCache cache, DotaDataProvider dataProvider,
-                          DemParseService demParseService, DemAnalysisEnhancer demEnhancer) {
+                          DemParseQueue demParseQueue, DemAnalysisEnhancer demEnhancer) {
         this.analyzer = analyzer;
         this.cache = cache;
         this.dataProvider = dataProvider;
-        this.demParseService = demParseService;
+        this.demParseQueue = demParseQueue;
         this.demEnhancer = demEnhancer;
     }
 
@@ -46,10 +49,106 @@ public class MatchController {
             @PathVariable long matchId,
             @RequestParam long accountId,
             @RequestParam(required = false, defaultValue = "true") boolean requestParse,
-            @RequestParam(required = false, defaultValue = "false") boolean enableDem) {
+            @RequestParam(required = false, defaultValue = "false") boolean enableDem,
+            @RequestParam(required = false, defaultValue = "full") String demProfile,
+            @RequestParam(required = false, defaultValue = "0") int sampleInterval) {
 
         log.info("GET analyze match MatchId={} AccountId={} Parse={} EnableDem={}", matchId, accountId, requestParse, enableDem);
 
+        DemParseProfile profile = DemParseProfile.byName(demProfile);
+        if (enableDem && profile == null) {
+            return unknownProfile(demProfile);
+        }
+
+        ResponseEntity<?> base = analyzeBase(matchId, accountId, requestParse);
+        if (!(base.getBody() instanceof MatchAnalysisResult analysis)) {
+            return base;
+        }
+
+        // Optionally enhance with DEM data. The parse runs on the DEM queue; if it doesn't finish within
+        // the wait the base analysis is returned and the client can poll /dem and fetch /dem/analyze later.
+        if (enableDem) {
+            try {
+                Optional<DemParseResult> demResult = demParseQueue.awaitResult(matchId, profile.withSampleInterval(sampleInterval));
+                demResult.ifPresent(dem -> demEnhancer.enhance(analysis, dem));
+            } catch (Exception e) {
+                log.warn("DEM enhancement failed for match {}, continuing with base analysis", matchId, e);
+            }
+        }
+
+        return ResponseEntity.ok(analysis);
+    }
+
+    @PostMapping("/{matchId}/dem")
+    public ResponseEntity<?> submitDemParse(
+            @PathVariable long matchId,
+            @RequestParam(required = false, defaultValue = "full") String profile,
+            @RequestParam(required = false, defaultValue = "0") int sampleInterval) {
+        DemParseProfile parseProfile = DemParseProfile.byName(profile);
+        if (parseProfile == null) {
+            return unknownProfile(profile);
+        }
+        try {
+            DemParseQueue.Job job = demParseQueue.submit(matchId, parseProfile.withSampleInterval(sampleInterval));
+            return ResponseEntity.status(job.isFinished() ? HttpStatus.OK : HttpStatus.ACCEPTED).body(job.toMap());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "10")
+                    .body(Map.of("message", "\u56DE\u653E\u89E3\u6790\u961F\u5217\u5DF2\u6EE1\uFF0C\u8BF7\u7A0D\u540E\u518D\u8BD5"));
+        }
+    }
+
+    @GetMapping("/{matchId}/dem")
+    public ResponseEntity<?> demParseStatus(
+            @PathVariable long matchId,
+            @RequestParam(required = false, defaultValue = "full") String profile,
+            @RequestParam(required = false, defaultValue = "0") int sampleInterval) {
+        DemParseProfile parseProfile = DemParseProfile.byName(profile);
+        if (parseProfile == null) {
+            return unknownProfile(profile);
+        }
+        DemParseQueue.Job job = demParseQueue.getJob(matchId, parseProfile.withSampleInterval(sampleInterval));
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "\u672A\u63D0\u4EA4\u56DE\u653E\u89E3\u6790"));
+        }
+        return ResponseEntity.ok(job.toMap());
+    }
+
+    @GetMapping("/{matchId}/dem/analyze")
+    public ResponseEntity<?> analyzeMatchWithDem(
+            @PathVariable long matchId,
+            @RequestParam long accountId,
+            @RequestParam(required = false, defaultValue = "full") String profile,
+            @RequestParam(required = false, defaultValue = "0") int sampleInterval) {
+        DemParseProfile parseProfile = DemParseProfile.byName(profile);
+        if (parseProfile == null) {
+            return unknownProfile(profile);
+        }
+        DemParseQueue.Job job = demParseQueue.getJob(matchId, parseProfile.withSampleInterval(sampleInterval));
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "\u672A\u63D0\u4EA4\u56DE\u653E\u89E3\u6790"));
+        }
+        if (job.getStatus() != DemParseQueue.Status.DONE) {
+            // Still running, or finished without a result (no replay, parse failure)
+            return ResponseEntity.status(job.isFinished() ? HttpStatus.NOT_FOUND : HttpStatus.ACCEPTED)
+                    .body(job.toMap());
+        }
+
+        ResponseEntity<?> base = analyzeBase(matchId, accountId, false);
+        if (!(base.getBody() instanceof MatchAnalysisResult analysis)) {
+            return base;
+        }
+        demParseQueue.result(job).ifPresent(dem -> demEnhancer.enhance(analysis, dem));
+        return ResponseEntity.ok(analysis);
+    }
+
+    private static ResponseEntity<?> unknownProfile(String profile) {
+        return ResponseEntity.badRequest().body(Map.of("message", "\u672A\u77E5\u7684\u56DE\u653E\u89E3\u6790\u914D\u7F6E: " + profile));
+    }
+
+    private ResponseEntity<?> analyzeBase(long matchId, long accountId, boolean requestParse) {
         if (requestParse) {
             dataProvider.requestParse(matchId);
         }
@@ -105,16 +204,6 @@ public class MatchController {
                     .body(Map.of("message", "\u65E0\u6CD5\u751F\u6210\u5206\u6790"));
         }
 
-        // Optionally enhance with DEM data
-        if (enableDem) {
-            try {
-                Optional<DemParseResult> demResult = demParseService.parseMatch(matchId);
-                demResult.ifPresent(dem -> demEnhancer.enhance(analysis, dem));
-            } catch (Exception e) {
-                log.warn("DEM enhancement failed for match {}, continuing with base analysis", matchId, e);
-            }
-        }
-
         return ResponseEntity.ok(analysis);
     }
 }
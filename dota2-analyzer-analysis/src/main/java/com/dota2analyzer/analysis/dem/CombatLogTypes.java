@@ -0,0 +1,28 @@
+package com.dota2analyzer.analysis.dem;
+
+import skadistats.clarity.model.CombatLogEntry;
+
+/**
+ * Ordinals of the Clarity combat log types that {@link DemProcessor} and {@link DemAnalysisEnhancer} look at.
+ * The enum is reached through {@link CombatLogEntry#getType()} instead of being imported, since the generated
+ * protobuf class has moved between packages across Clarity releases.
+ */
+final class CombatLogTypes {
+
+    static final int DAMAGE = ordinal("DOTA_COMBATLOG_DAMAGE");
+    static final int DEATH = ordinal("DOTA_COMBATLOG_DEATH");
+    static final int ABILITY = ordinal("DOTA_COMBATLOG_ABILITY");
+    static final int PURCHASE = ordinal("DOTA_COMBATLOG_PURCHASE");
+
+    private CombatLogTypes() {}
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int ordinal(String name) {
+        try {
+            Class type = CombatLogEntry.class.getMethod("getType").getReturnType();
+            return Enum.valueOf(type, name).ordinal();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Clarity CombatLogEntry has no getType()", e);
+        }
+    }
+}
@@ -6,7 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Enhances OpenDota-based analysis results with data from DEM replay parsing.
@@ -16,6 +15,16 @@ public class DemAnalysisEnhancer {
     private static final Logger log = LoggerFactory.getLogger(DemAnalysisEnhancer.class);
     private static final int TICKS_PER_SECOND = 30;
 
+    private final HeatmapAggregator heatmapAggregator;
+
+    public DemAnalysisEnhancer() {
+        this(new HeatmapAggregator(64, 10 * 60 * TICKS_PER_SECOND, 0));
+    }
+
+    public DemAnalysisEnhancer(HeatmapAggregator heatmapAggregator) {
+        this.heatmapAggregator = heatmapAggregator;
+    }
+
     /**
      * Enhance the analysis result with DEM data.
      * Modifies the result in place, adding DEM-specific fields.
@@ -28,7 +37,7 @@ public class DemAnalysisEnhancer {
         result.setDemDataAvailable(true);
 
         // Build position heatmap data
-        Map<String, Object> heatmapData = buildHeatmapData(demData);
+        Map<String, Object> heatmapData = heatmapAggregator.aggregate(demData.getHeroTimelines());
         if (!heatmapData.isEmpty()) {
             result.setHeroPositionHeatmap(heatmapData);
         }
@@ -61,32 +70,23 @@ public class DemAnalysisEnhancer {
         log.info("DEM enhancement complete for match {}", result.getMatchId());
     }
 
-    private Map<String, Object> buildHeatmapData(DemParseResult demData) {
-        Map<String, Object> heatmap = new HashMap<>();
-        for (Map.Entry<String, List<HeroPositionTick>> entry : demData.getHeroPositions().entrySet()) {
-            List<int[]> positions = entry.getValue().stream()
-                    .map(t -> new int[]{t.getCellX(), t.getCellY(), t.getTick()})
-                    .collect(Collectors.toList());
-            heatmap.put(entry.getKey(), positions);
-        }
-        return heatmap;
-    }
-
     private Map<String, Object> buildEconomyData(DemParseResult demData) {
         Map<String, Object> economy = new HashMap<>();
-        for (Map.Entry<String, List<EconomyTick>> entry : demData.getEconomyTimelines().entrySet()) {
-            List<Map<String, Integer>> timeline = entry.getValue().stream()
-                    .map(t -> {
-                        Map<String, Integer> point = new LinkedHashMap<>();
-                        point.put("tick", t.getTick());
-                        point.put("time", t.getTick() / TICKS_PER_SECOND);
-                        point.put("netWorth", t.getNetWorth());
-                        point.put("lastHits", t.getLastHits());
-                        point.put("denies", t.getDenies());
-                        point.put("xp", t.getXp());
-                        return point;
-                    })
-                    .collect(Collectors.toList());
+        for (Map.Entry<String, HeroTimeline> entry : demData.getHeroTimelines().entrySet()) {
+            HeroTimeline hero = entry.getValue();
+            if (hero.getEconomyCount() == 0) continue;
+            List<Map<String, Integer>> timeline = new ArrayList<>(hero.getEconomyCount());
+            for (int i = 0; i < hero.getEconomyCount(); i++) {
+                int tick = hero.getEconomyTicks().get(i);
+                Map<String, Integer> point = new LinkedHashMap<>();
+                point.put("tick", tick);
+                point.put("time", tick / TICKS_PER_SECOND);
+                point.put("netWorth", hero.getNetWorth().get(i));
+                point.put("lastHits", hero.getLastHits().get(i));
+                point.put("denies", hero.getDenies().get(i));
+                point.put("xp", hero.getXp().get(i));
+                timeline.add(point);
+            }
             economy.put(entry.getKey(), timeline);
         }
         return economy;
@@ -95,54 +95,73 @@ public class DemAnalysisEnhancer {
     private Map<String, Object> buildCombatSummary(DemParseResult demData) {
         Map<String, Object> summary = new HashMap<>();
 
-        // Count kills by hero
-        Map<String, Integer> killCounts = new HashMap<>();
-        Map<String, Integer> deathCounts = new HashMap<>();
+        // Count per dictionary id and only turn ids back into names for the heroes that occur;
+        // the hero check is done once per distinct name
+        CombatLog combatLog = demData.getCombatLog();
+        boolean[] isHero = new boolean[combatLog.dictionarySize()];
+        for (int id = 0; id < isHero.length; id++) {
+            isHero[id] = combatLog.name(id).startsWith("npc_dota_hero_");
+        }
+        int[] kills = new int[isHero.length];
+        int[] deaths = new int[isHero.length];
         long totalDamageEvents = 0;
 
-        for (CombatEvent event : demData.getCombatEvents()) {
-            if ("DOTA_COMBATLOG_DEATH".equals(event.getType())) {
-                String attacker = event.getAttacker();
-                String target = event.getTarget();
-                if (attacker != null && attacker.startsWith("npc_dota_hero_")) {
-                    killCounts.merge(attacker, 1, Integer::sum);
-                }
-                if (target != null && target.startsWith("npc_dota_hero_")) {
-                    deathCounts.merge(target, 1, Integer::sum);
-                }
-            }
-            if ("DOTA_COMBATLOG_DAMAGE".equals(event.getType())) {
+        IntColumn types = combatLog.getTypes();
+        IntColumn attackers = combatLog.getAttackers();
+        IntColumn targets = combatLog.getTargets();
+        for (int i = 0; i < combatLog.size(); i++) {
+            int type = types.get(i);
+            if (type == CombatLogTypes.DEATH) {
+                int attacker = attackers.get(i);
+                int target = targets.get(i);
+                if (attacker != CombatLog.NONE && isHero[attacker]) kills[attacker]++;
+                if (target != CombatLog.NONE && isHero[target]) deaths[target]++;
+            } else if (type == CombatLogTypes.DAMAGE) {
                 totalDamageEvents++;
             }
         }
 
-        summary.put("killsByHero", killCounts);
-        summary.put("deathsByHero", deathCounts);
+        summary.put("killsByHero", countsByName(combatLog, kills));
+        summary.put("deathsByHero", countsByName(combatLog, deaths));
         summary.put("totalDamageEvents", totalDamageEvents);
-        summary.put("totalCombatEvents", demData.getCombatEvents().size());
+        summary.put("totalCombatEvents", combatLog.size());
 
         return summary;
     }
 
+    private static Map<String, Integer> countsByName(CombatLog combatLog, int[] counts) {
+        Map<String, Integer> byName = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) byName.put(combatLog.name(id), counts[id]);
+        }
+        return byName;
+    }
+
     private void enhanceLaningDetails(MatchAnalysisResult result, DemParseResult demData) {
         // Add DEM-based insights to laning details
         List<String> details = new ArrayList<>(result.getLaningDetails());
 
         // Check for early rotations (position changes in first 10 minutes)
         int tenMinuteTick = 10 * 60 * TICKS_PER_SECOND;
-        for (Map.Entry<String, List<HeroPositionTick>> entry : demData.getHeroPositions().entrySet()) {
-            List<HeroPositionTick> earlyTicks = entry.getValue().stream()
-                    .filter(t -> t.getTick() <= tenMinuteTick)
-                    .collect(Collectors.toList());
-
-            if (earlyTicks.size() > 2) {
-                // Detect lane changes by checking position variance
-                int firstCellX = earlyTicks.get(0).getCellX();
-                boolean laneChanged = earlyTicks.stream()
-                        .anyMatch(t -> Math.abs(t.getCellX() - firstCellX) > 30);
-                if (laneChanged) {
-                    details.add("[DEM] " + entry.getKey() + " \u572810\u5206\u949F\u524D\u6709\u660E\u663E\u7684\u8DEF\u7EBF\u53D8\u52A8");
+        for (Map.Entry<String, HeroTimeline> entry : demData.getHeroTimelines().entrySet()) {
+            IntColumn ticks = entry.getValue().getPositionTicks();
+            IntColumn cellX = entry.getValue().getCellX();
+            // Detect lane changes by checking position variance
+            int earlyCount = 0;
+            int firstCellX = 0;
+            boolean laneChanged = false;
+            for (int i = 0; i < ticks.size(); i++) {
+                if (ticks.get(i) > tenMinuteTick) continue;
+                if (earlyCount == 0) {
+                    firstCellX = cellX.get(i);
+                } else if (Math.abs(cellX.get(i) - firstCellX) > 30) {
+                    laneChanged = true;
                 }
+                earlyCount++;
+            }
+
+            if (earlyCount > 2 && laneChanged) {
+                details.add("[DEM] " + entry.getKey() + " \u572810\u5206\u949F\u524D\u6709\u660E\u663E\u7684\u8DEF\u7EBF\u53D8\u52A8");
             }
         }
 
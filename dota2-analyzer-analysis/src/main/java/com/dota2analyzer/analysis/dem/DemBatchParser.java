@@ -0,0 +1,213 @@
+package com.dota2analyzer.analysis.dem;
+
+import com.dota2analyzer.analysis.dem.model.DemParseResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses a list of replays in the background, e.g. an account's whole backlog, on its own pool so batches
+ * never take slots from the interactive {@link DemParseQueue}. Results go straight to the parse cache
+ * through {@link DemParseService} and are not kept in memory.
+ *
+ * <p>Concurrency is bounded twice: by {@code parallelism} threads and by a heap budget. Each parse reserves
+ * an estimate of its working set (a fixed overhead plus the replay size) before it starts, so a run of
+ * large replays parses fewer at a time instead of running the service out of memory.
+ */
+public class DemBatchParser implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DemBatchParser.class);
+    private static final long MB = 1024 * 1024;
+
+    public enum Status { RUNNING, DONE }
+
+    public static final class Batch {
+        private final String id;
+        private final DemParseProfile profile;
+        private final int total;
+        private final Instant submittedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger parsed = new AtomicInteger();
+        private final AtomicInteger cached = new AtomicInteger();
+        private final AtomicInteger missing = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong bytesParsed = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private volatile Status status = Status.RUNNING;
+        private volatile long elapsedNanos = -1;
+        private volatile Instant finishedAt;
+
+        private Batch(String id, DemParseProfile profile, int total) {
+            this.id = id;
+            this.profile = profile;
+            this.total = total;
+        }
+
+        public String getId() { return id; }
+        public Status getStatus() { return status; }
+
+        public Map<String, Object> toMap() {
+            long elapsed = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startNanos;
+            double seconds = elapsed / 1e9;
+            int parsedCount = parsed.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("batchId", id);
+            map.put("profile", profile.getName());
+            map.put("status", status.name());
+            map.put("total", total);
+            map.put("parsed", parsedCount);
+            map.put("cached", cached.get());
+            map.put("missing", missing.get());
+            map.put("failed", failed.get());
+            map.put("remaining", total - parsedCount - cached.get() - missing.get() - failed.get());
+            map.put("bytesParsed", bytesParsed.get());
+            map.put("elapsedSeconds", Math.round(seconds * 10) / 10.0);
+            // Wall-clock throughput of the batch; cached and missing replays cost almost nothing and are excluded
+            map.put("replaysPerMinute", seconds > 0 ? Math.round(parsedCount / seconds * 600) / 10.0 : 0.0);
+            map.put("mbPerSecond", seconds > 0 ? Math.round(bytesParsed.get() / (double) MB / seconds * 10) / 10.0 : 0.0);
+            if (parsedCount > 0) {
+                map.put("avgParseSeconds", Math.round(parseNanos.get() / 1e8 / parsedCount) / 10.0);
+            }
+            map.put("submittedAt", submittedAt.toString());
+            if (finishedAt != null) map.put("finishedAt", finishedAt.toString());
+            return map;
+        }
+    }
+
+    private final DemParseService parser;
+    private final ExecutorService executor;
+    private final Semaphore memory;
+    private final int memoryBudgetMb;
+    private final long parseOverheadBytes;
+    private final Duration retention;
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * @param parallelism        parse threads; 0 or less for one per available core
+     * @param memoryBudgetBytes  heap the batch may reserve for parses in flight
+     * @param parseOverheadBytes estimated working set of one parse on top of the replay size
+     */
+    public DemBatchParser(DemParseService parser, int parallelism, long memoryBudgetBytes, long parseOverheadBytes,
+                          Duration retention) {
+        this.parser = parser;
+        this.parseOverheadBytes = parseOverheadBytes;
+        this.retention = retention;
+        this.memoryBudgetMb = (int) Math.max(1, memoryBudgetBytes / MB);
+        this.memory = new Semaphore(memoryBudgetMb, true);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        // Below normal priority, like the interactive queue, so a backlog never starves request handling
+        ThreadFactory factory = Thread.ofPlatform().name("dem-batch-", 0).daemon(true)
+                .priority(Thread.NORM_PRIORITY - 1).factory();
+        this.executor = Executors.newFixedThreadPool(threads, factory);
+        log.info("DEM batch parser: {} threads, {}MB memory budget", threads, memoryBudgetMb);
+    }
+
+    /** Start parsing {@code matchIds} in the background. Duplicate ids are parsed once. */
+    public Batch submit(Collection<Long> matchIds, DemParseProfile profile) {
+        pruneFinished();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(matchIds));
+        Batch batch = new Batch(UUID.randomUUID().toString(), profile, ids.size());
+        batches.put(batch.id, batch);
+        log.info("DEM batch {} started: {} replays (profile {})", batch.id, ids.size(), profile);
+        Thread.ofVirtual().name("dem-batch-" + batch.id).start(() -> run(batch, ids));
+        return batch;
+    }
+
+    /** The batch with {@code batchId}, or null if unknown or expired. */
+    public Batch getBatch(String batchId) {
+        pruneFinished();
+        return batches.get(batchId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("runningBatches", batches.values().stream().filter(b -> b.status == Status.RUNNING).count());
+        stats.put("trackedBatches", batches.size());
+        stats.put("memoryBudgetMb", memoryBudgetMb);
+        stats.put("memoryAvailableMb", memory.availablePermits());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Feeds the batch to the pool one replay at a time, blocking on the memory budget, so the pool's queue
+     * never holds more than the replays that fit.
+     */
+    private void run(Batch batch, List<Long> matchIds) {
+        List<Future<?>> inFlight = new ArrayList<>();
+        try {
+            for (long matchId : matchIds) {
+                long size = parser.replaySize(matchId);
+                if (size < 0) {
+                    batch.missing.incrementAndGet();
+                    continue;
+                }
+                if (parser.isCached(matchId, batch.profile)) {
+                    batch.cached.incrementAndGet();
+                    continue;
+                }
+                int permits = reservation(size);
+                memory.acquire(permits);
+                try {
+                    inFlight.add(executor.submit(() -> parse(batch, matchId, size, permits)));
+                } catch (RejectedExecutionException e) {
+                    memory.release(permits);
+                    throw e;
+                }
+            }
+            for (Future<?> future : inFlight) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.forEach(f -> f.cancel(true));
+        } catch (ExecutionException | RejectedExecutionException e) {
+            log.error("DEM batch {} aborted", batch.id, e);
+        } finally {
+            batch.elapsedNanos = System.nanoTime() - batch.startNanos;
+            batch.finishedAt = Instant.now();
+            batch.status = Status.DONE;
+            log.info("DEM batch {} finished: {}", batch.id, batch.toMap());
+        }
+    }
+
+    private void parse(Batch batch, long matchId, long size, int permits) {
+        long start = System.nanoTime();
+        try {
+            Optional<DemParseResult> result = parser.parseMatch(matchId, batch.profile);
+            if (result.isPresent()) {
+                batch.parsed.incrementAndGet();
+                batch.bytesParsed.addAndGet(size);
+                batch.parseNanos.addAndGet(System.nanoTime() - start);
+            } else {
+                batch.failed.incrementAndGet();
+            }
+        } catch (Throwable t) {
+            log.error("DEM batch {} failed to parse match {}", batch.id, matchId, t);
+            batch.failed.incrementAndGet();
+        } finally {
+            memory.release(permits);
+        }
+    }
+
+    /** Estimated working set of a parse in MB, capped at the whole budget so an oversized replay runs alone. */
+    private int reservation(long replayBytes) {
+        long mb = (parseOverheadBytes + replayBytes + MB - 1) / MB;
+        return (int) Math.min(memoryBudgetMb, Math.max(1, mb));
+    }
+
+    private void pruneFinished() {
+        Instant cutoff = Instant.now().minus(retention);
+        batches.values().removeIf(b -> b.status == Status.DONE && b.finishedAt.isBefore(cutoff));
+    }
+}
@@ -0,0 +1,94 @@
+package com.dota2analyzer.analysis.dem;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * What a DEM parse extracts: which extractors run, how often hero entities are sampled and which tick
+ * window is recorded. Parsing stops once the replay passes {@code endTick}.
+ */
+public final class DemParseProfile {
+
+    public enum Extractor { POSITIONS, ECONOMY, COMBAT, ABILITIES, WARDS }
+
+    private static final int TICKS_PER_SECOND = 30;
+
+    public static final DemParseProfile FULL = new DemParseProfile("full",
+            EnumSet.allOf(Extractor.class), TICKS_PER_SECOND, 0, Integer.MAX_VALUE);
+
+    /** Positions for the first 10 minutes, which is all the laning checks in DemAnalysisEnhancer read. */
+    public static final DemParseProfile LANING = new DemParseProfile("laning",
+            EnumSet.of(Extractor.POSITIONS), TICKS_PER_SECOND, 0, 10 * 60 * TICKS_PER_SECOND);
+
+    private final String name;
+    private final Set<Extractor> extractors;
+    private final int sampleIntervalTicks;
+    private final int startTick;
+    private final int endTick;
+
+    public DemParseProfile(String name, Set<Extractor> extractors, int sampleIntervalTicks, int startTick, int endTick) {
+        this.name = name;
+        this.extractors = extractors.isEmpty() ? EnumSet.noneOf(Extractor.class) : EnumSet.copyOf(extractors);
+        this.sampleIntervalTicks = Math.max(1, sampleIntervalTicks);
+        this.startTick = Math.max(0, startTick);
+        this.endTick = endTick;
+    }
+
+    /** FULL or LANING by name (case-insensitive), or null if unknown. */
+    public static DemParseProfile byName(String name) {
+        if (name == null) return null;
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "full" -> FULL;
+            case "laning" -> LANING;
+            default -> null;
+        };
+    }
+
+    public DemParseProfile withSampleInterval(int ticks) {
+        if (ticks <= 0 || ticks == sampleIntervalTicks) return this;
+        return new DemParseProfile(name + "@" + ticks, extractors, ticks, startTick, endTick);
+    }
+
+    public String getName() { return name; }
+    public int getSampleIntervalTicks() { return sampleIntervalTicks; }
+    public int getStartTick() { return startTick; }
+    public int getEndTick() { return endTick; }
+
+    public boolean has(Extractor extractor) {
+        return extractors.contains(extractor);
+    }
+
+    public boolean samplesEntities() {
+        return has(Extractor.POSITIONS) || has(Extractor.ECONOMY);
+    }
+
+    public boolean readsCombatLog() {
+        return has(Extractor.COMBAT) || has(Extractor.ABILITIES) || has(Extractor.WARDS);
+    }
+
+    public boolean inWindow(int tick) {
+        return tick >= startTick && tick <= endTick;
+    }
+
+    /**
+     * True if a parse with this profile holds everything a parse with {@code other} would: all of its
+     * extractors, its whole window, and every tick it samples. Entities are sampled on multiples of the
+     * interval, so that last part holds when {@code other}'s interval is a multiple of this one's.
+     */
+    public boolean covers(DemParseProfile other) {
+        return extractors.containsAll(other.extractors)
+                && startTick <= other.startTick && endTick >= other.endTick
+                && other.sampleIntervalTicks % sampleIntervalTicks == 0;
+    }
+
+    /** Identity of the output this profile produces, used to key cached parses and in-flight jobs. */
+    public String key() {
+        return extractors + "/" + sampleIntervalTicks + "/" + startTick + "-" + endTick;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
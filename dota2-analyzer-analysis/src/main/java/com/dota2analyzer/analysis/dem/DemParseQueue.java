@@ -0,0 +1,224 @@
+package com.dota2analyzer.analysis.dem;
+
+import com.dota2analyzer.analysis.dem.model.DemParseResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.SoftReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs DEM parses on a small dedicated pool so replays never parse on servlet threads.
+ * At most {@code parallelism} parses run at once and at most {@code maxQueued} wait; beyond that
+ * {@link #submit} rejects. Parses are deduplicated per match and profile while in flight, and finished jobs are kept
+ * for {@code retention} so clients can poll for the outcome. A finished job holds its result only softly; once
+ * the GC has cleared it, {@link #result} reads it back from the parse cache on disk.
+ */
+public class DemParseQueue implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DemParseQueue.class);
+
+    public enum Status { QUEUED, RUNNING, DONE, UNAVAILABLE, FAILED }
+
+    public static final class Job {
+        private final long matchId;
+        private final DemParseProfile profile;
+        private final Instant submittedAt = Instant.now();
+        // Completes with the final status; the result itself is not kept here
+        private final CompletableFuture<Status> done = new CompletableFuture<>();
+        private volatile SoftReference<DemParseResult> result;
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+
+        private Job(long matchId, DemParseProfile profile) {
+            this.matchId = matchId;
+            this.profile = profile;
+        }
+
+        public long getMatchId() { return matchId; }
+        public DemParseProfile getProfile() { return profile; }
+        public Status getStatus() { return status; }
+
+        public boolean isFinished() {
+            return status == Status.DONE || status == Status.UNAVAILABLE || status == Status.FAILED;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("matchId", matchId);
+            map.put("profile", profile.getName());
+            map.put("status", status.name());
+            map.put("submittedAt", submittedAt.toString());
+            if (startedAt != null) map.put("startedAt", startedAt.toString());
+            if (finishedAt != null) map.put("finishedAt", finishedAt.toString());
+            return map;
+        }
+    }
+
+    private final DemParseService parser;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Duration defaultWait;
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param defaultWait how long {@link #awaitResult(long)} blocks a request thread before giving up on the parse
+     */
+    public DemParseQueue(DemParseService parser, int parallelism, int maxQueued, Duration retention, Duration defaultWait) {
+        this.parser = parser;
+        this.retention = retention;
+        this.defaultWait = defaultWait;
+        int threads = Math.max(1, parallelism);
+        // Slightly below normal priority so a burst of parses yields to request handling
+        ThreadFactory factory = Thread.ofPlatform().name("dem-parse-", 0).daemon(true)
+                .priority(Thread.NORM_PRIORITY - 1).factory();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public Job submit(long matchId) {
+        return submit(matchId, DemParseProfile.FULL);
+    }
+
+    /**
+     * Queue a parse for {@code matchId}, or return the job already queued, running or recently finished.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Job submit(long matchId, DemParseProfile profile) {
+        pruneFinished();
+        String key = jobKey(matchId, profile);
+        Job job = new Job(matchId, profile);
+        Job existing = jobs.putIfAbsent(key, job);
+        if (existing != null) {
+            if (existing.status != Status.FAILED && existing.status != Status.UNAVAILABLE) {
+                deduplicated.increment();
+                return existing;
+            }
+            // Retry failed parses (or a replay that may have been downloaded since) instead of
+            // serving the old outcome until it expires
+            if (!jobs.replace(key, existing, job)) {
+                return submit(matchId, profile);
+            }
+        }
+
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(key, job);
+            rejected.increment();
+            log.warn("DEM parse queue full, rejecting match {}", matchId);
+            throw e;
+        }
+        return job;
+    }
+
+    public Job getJob(long matchId) {
+        return getJob(matchId, DemParseProfile.FULL);
+    }
+
+    /** The job for {@code matchId} and {@code profile}, or null if none was submitted or it has expired. */
+    public Job getJob(long matchId, DemParseProfile profile) {
+        pruneFinished();
+        return jobs.get(jobKey(matchId, profile));
+    }
+
+    public Optional<DemParseResult> awaitResult(long matchId) {
+        return awaitResult(matchId, DemParseProfile.FULL, defaultWait);
+    }
+
+    public Optional<DemParseResult> awaitResult(long matchId, DemParseProfile profile) {
+        return awaitResult(matchId, profile, defaultWait);
+    }
+
+    /**
+     * Submit (or join) a parse and wait up to {@code timeout} for it. Returns empty on timeout, queue
+     * overflow or when the replay is unavailable; the parse itself keeps running and can be polled.
+     */
+    public Optional<DemParseResult> awaitResult(long matchId, DemParseProfile profile, Duration timeout) {
+        Job job;
+        try {
+            job = submit(matchId, profile);
+        } catch (RejectedExecutionException e) {
+            return Optional.empty();
+        }
+        try {
+            job.done.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return result(job);
+        } catch (TimeoutException e) {
+            log.info("DEM parse for match {} still {} after {}ms, continuing without it", matchId, job.status, timeout.toMillis());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The result of a finished job, or empty if it is still running or produced none. Served from memory while
+     * the GC keeps it, otherwise from the parse cache (or, for a parse too short to be cached, parsed again).
+     */
+    public Optional<DemParseResult> result(Job job) {
+        if (job.status != Status.DONE) return Optional.empty();
+        SoftReference<DemParseResult> ref = job.result;
+        DemParseResult held = ref != null ? ref.get() : null;
+        if (held != null) return Optional.of(held);
+        Optional<DemParseResult> reloaded = parser.parseMatch(job.matchId, job.profile);
+        reloaded.ifPresent(r -> job.result = new SoftReference<>(r));
+        return reloaded;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("trackedJobs", jobs.size());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        job.startedAt = Instant.now();
+        job.status = Status.RUNNING;
+        try {
+            Optional<DemParseResult> result = parser.parseMatch(job.matchId, job.profile);
+            result.ifPresent(r -> job.result = new SoftReference<>(r));
+            job.finishedAt = Instant.now();
+            job.status = result.isPresent() ? Status.DONE : Status.UNAVAILABLE;
+            job.done.complete(job.status);
+        } catch (Throwable t) {
+            log.error("DEM parse job failed for match {}", job.matchId, t);
+            job.finishedAt = Instant.now();
+            job.status = Status.FAILED;
+            job.done.completeExceptionally(t);
+        }
+    }
+
+    private static String jobKey(long matchId, DemParseProfile profile) {
+        return matchId + ":" + profile.key();
+    }
+
+    private void pruneFinished() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt.isBefore(cutoff));
+    }
+}
@@ -1,30 +1,60 @@
 package com.dota2analyzer.analysis.dem;
 
+import com.dota2analyzer.analysis.dem.model.AbilityUsage;
+import com.dota2analyzer.analysis.dem.model.CombatLog;
 import com.dota2analyzer.analysis.dem.model.DemParseResult;
+import com.dota2analyzer.analysis.dem.model.DemResultCodec;
+import com.dota2analyzer.analysis.dem.model.HeroTimeline;
+import com.dota2analyzer.analysis.dem.model.IntColumn;
+import com.dota2analyzer.analysis.dem.model.WardPlacement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class DemParseService {
 
     private static final Logger log = LoggerFactory.getLogger(DemParseService.class);
+    private static final String CACHE_SUFFIX = ".demparse";
+    private static final long PARSER_HASH = parserHash();
+
     private final String replayDirPath;
 
     public DemParseService(String replayDirPath) {
         this.replayDirPath = replayDirPath;
     }
 
+    public Optional<DemParseResult> parseMatch(long matchId) {
+        return parseMatch(matchId, DemParseProfile.FULL);
+    }
+
     /**
      * Parse a DEM replay file for the given match.
      * Looks for the replay file at {replayDirPath}/{matchId}.dem (downloaded by the data service).
+     * A complete parse is cached next to it as {matchId}.demparse ({matchId}.{profile}.demparse for other
+     * profiles) and reused while the replay, the parser and the profile are unchanged. A cached full parse
+     * also serves any profile it {@linkplain DemParseProfile#covers covers}, cut down to that profile's
+     * extractors, window and sample interval.
      * Returns the parsed result, or empty if the replay is unavailable.
      */
-    public Optional<DemParseResult> parseMatch(long matchId) {
-        log.info("Attempting DEM parse for match {}", matchId);
+    public Optional<DemParseResult> parseMatch(long matchId, DemParseProfile profile) {
+        log.info("Attempting DEM parse for match {} (profile {})", matchId, profile);
 
         Path demFile = Paths.get(replayDirPath, matchId + ".dem");
         if (!Files.exists(demFile)) {
@@ -32,13 +62,218 @@ public class DemParseService {
             return Optional.empty();
         }
 
+        Path cacheFile = cacheFile(matchId, profile);
+        long key = cacheKey(demFile, profile);
+        Optional<DemParseResult> cached = readCache(cacheFile, key, matchId);
+        if (cached.isEmpty() && servedByFull(profile)) {
+            cached = readCache(cacheFile(matchId, DemParseProfile.FULL), cacheKey(demFile, DemParseProfile.FULL), matchId)
+                    .map(full -> narrow(full, profile));
+        }
+        if (cached.isPresent()) {
+            return cached;
+        }
+
         try {
-            DemProcessor processor = new DemProcessor();
+            DemProcessor processor = new DemProcessor(profile);
             DemParseResult result = processor.parse(demFile, matchId);
+            if (processor.isComplete()) {
+                writeCache(cacheFile, key, result);
+            }
             return Optional.of(result);
         } catch (Exception e) {
             log.error("DEM parse failed for match {}", matchId, e);
             return Optional.empty();
         }
     }
+
+    /** Size of the downloaded replay for {@code matchId} in bytes, or -1 if it is not on disk. */
+    public long replaySize(long matchId) {
+        try {
+            return Files.size(Paths.get(replayDirPath, matchId + ".dem"));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * True if {@link #parseMatch(long, DemParseProfile)} would be served from the cache, i.e. a parse for
+     * {@code profile} or a full parse covering it is stored and still matches the replay on disk. Only reads
+     * the headers.
+     */
+    public boolean isCached(long matchId, DemParseProfile profile) {
+        Path demFile = Paths.get(replayDirPath, matchId + ".dem");
+        if (!Files.exists(demFile)) return false;
+        return hasCache(cacheFile(matchId, profile), cacheKey(demFile, profile))
+                || (servedByFull(profile)
+                    && hasCache(cacheFile(matchId, DemParseProfile.FULL), cacheKey(demFile, DemParseProfile.FULL)));
+    }
+
+    private static boolean isFull(DemParseProfile profile) {
+        return profile.key().equals(DemParseProfile.FULL.key());
+    }
+
+    private static boolean servedByFull(DemParseProfile profile) {
+        return !isFull(profile) && DemParseProfile.FULL.covers(profile);
+    }
+
+    /** The part of a full parse that a parse with {@code profile} would have produced. */
+    private static DemParseResult narrow(DemParseResult full, DemParseProfile profile) {
+        DemParseResult result = new DemParseResult(full.getMatchId());
+
+        if (profile.samplesEntities()) {
+            boolean positions = profile.has(DemParseProfile.Extractor.POSITIONS);
+            boolean economy = profile.has(DemParseProfile.Extractor.ECONOMY);
+            Map<String, HeroTimeline> timelines = new HashMap<>();
+            full.getHeroTimelines().forEach((hero, source) -> {
+                HeroTimeline timeline = new HeroTimeline();
+                IntColumn ticks = source.getPositionTicks();
+                for (int i = 0; positions && i < ticks.size(); i++) {
+                    if (sampled(profile, ticks.get(i))) {
+                        timeline.addPosition(ticks.get(i), source.getCellX().get(i), source.getCellY().get(i));
+                    }
+                }
+                ticks = source.getEconomyTicks();
+                for (int i = 0; economy && i < ticks.size(); i++) {
+                    if (sampled(profile, ticks.get(i))) {
+                        timeline.addEconomy(ticks.get(i), source.getNetWorth().get(i), source.getLastHits().get(i),
+                                source.getDenies().get(i), source.getXp().get(i));
+                    }
+                }
+                timeline.trimToSize();
+                timelines.put(hero, timeline);
+            });
+            result.setHeroTimelines(timelines);
+        }
+
+        if (profile.has(DemParseProfile.Extractor.COMBAT)) {
+            CombatLog source = full.getCombatLog();
+            CombatLog combatLog = new CombatLog();
+            for (int i = 0; i < source.size(); i++) {
+                if (profile.inWindow(source.getTicks().get(i))) {
+                    combatLog.add(source.getTicks().get(i), source.getTypes().get(i),
+                            source.name(source.getAttackers().get(i)), source.name(source.getTargets().get(i)),
+                            source.name(source.getInflictors().get(i)), source.getValues().get(i));
+                }
+            }
+            combatLog.trimToSize();
+            result.setCombatLog(combatLog);
+        }
+
+        if (profile.has(DemParseProfile.Extractor.WARDS)) {
+            List<WardPlacement> wards = new ArrayList<>();
+            for (WardPlacement ward : full.getWardPlacements()) {
+                if (profile.inWindow(ward.getTick())) wards.add(ward);
+            }
+            result.setWardPlacements(wards);
+        }
+
+        if (profile.has(DemParseProfile.Extractor.ABILITIES)) {
+            List<AbilityUsage> usages = new ArrayList<>();
+            for (AbilityUsage usage : full.getAbilityUsages()) {
+                if (profile.inWindow(usage.getTick())) usages.add(usage);
+            }
+            result.setAbilityUsages(usages);
+        }
+        return result;
+    }
+
+    private static boolean sampled(DemParseProfile profile, int tick) {
+        return tick % profile.getSampleIntervalTicks() == 0 && profile.inWindow(tick);
+    }
+
+    private static boolean hasCache(Path cacheFile, long key) {
+        if (!Files.exists(cacheFile)) return false;
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            return DemResultCodec.hasKey(in, key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Optional<DemParseResult> readCache(Path cacheFile, long key, long matchId) {
+        if (!Files.exists(cacheFile)) return Optional.empty();
+        long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            Optional<DemParseResult> result = DemResultCodec.read(in, key);
+            if (result.isPresent()) {
+                log.info("Loaded cached DEM parse for match {} in {}ms", matchId, (System.nanoTime() - start) / 1_000_000);
+            } else {
+                log.info("Cached DEM parse for match {} is stale, re-parsing", matchId);
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read cached DEM parse {}, re-parsing", cacheFile, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeCache(Path cacheFile, long key, DemParseResult result) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                DemResultCodec.write(result, key, out);
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Cached DEM parse for match {} ({} bytes)", result.getMatchId(), Files.size(cacheFile));
+        } catch (IOException e) {
+            log.warn("Failed to cache DEM parse for match {}", result.getMatchId(), e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private Path cacheFile(long matchId, DemParseProfile profile) {
+        String name = isFull(profile)
+                ? matchId + CACHE_SUFFIX
+                : matchId + "." + profile.getName().replaceAll("[^A-Za-z0-9_-]", "_") + CACHE_SUFFIX;
+        return Paths.get(replayDirPath, name);
+    }
+
+    /**
+     * Ties a cache entry to the parser build, the profile and the exact replay file it came from,
+     * so a code change, a different profile or a re-downloaded replay all invalidate it.
+     */
+    private static long cacheKey(Path demFile, DemParseProfile profile) {
+        long size;
+        long modified;
+        try {
+            size = Files.size(demFile);
+            modified = Files.getLastModifiedTime(demFile).toMillis();
+        } catch (IOException e) {
+            size = -1;
+            modified = -1;
+        }
+        long key = PARSER_HASH;
+        key = key * 31 + profile.key().hashCode();
+        key = key * 31 + size;
+        key = key * 31 + modified;
+        return key;
+    }
+
+    private static long parserHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(4).putInt(DemProcessor.PARSER_VERSION).array());
+            List<Class<?>> classes = new ArrayList<>(List.of(DemProcessor.class));
+            classes.addAll(List.of(DemProcessor.class.getDeclaredClasses()));
+            classes.sort(Comparator.comparing(Class::getName));
+            for (Class<?> type : classes) {
+                String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+                try (InputStream in = type.getResourceAsStream(resource)) {
+                    if (in != null) {
+                        digest.update(in.readAllBytes());
+                    }
+                }
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("Could not hash DemProcessor, falling back to PARSER_VERSION only", e);
+            return DemProcessor.PARSER_VERSION;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import skadistats.clarity.Clarity;
 import skadistats.clarity.model.CombatLogEntry;
+import skadistats.clarity.model.DTClass;
 import skadistats.clarity.model.Entity;
 import skadistats.clarity.model.FieldPath;
 import skadistats.clarity.processor.entities.Entities;
@@ -19,145 +20,255 @@ import skadistats.clarity.source.MappedFileSource;
 import java.nio.file.Path;
 import java.util.*;
 
-@UsesEntities
+/**
+ * Runs one Clarity pass over a replay according to a {@link DemParseProfile}. Each extractor group is a
+ * separate listener object and only the ones the profile needs are registered, so e.g. a positions-only
+ * parse never subscribes to the combat log and a combat-only parse does not decode entities.
+ */
 public class DemProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(DemProcessor.class);
-    private static final int TICKS_PER_SECOND = 30;
-    private static final int SAMPLE_INTERVAL_TICKS = TICKS_PER_SECOND; // Sample every second
+    // Part of the parse cache key together with this class's bytecode; bump it when output changes for
+    // reasons outside this class (e.g. a Clarity upgrade, which may renumber the combat log type ordinals we
+    // store) so cached results are re-parsed
+    public static final int PARSER_VERSION = 1;
 
-    private final Map<String, List<HeroPositionTick>> heroPositions = new HashMap<>();
-    private final Map<String, List<EconomyTick>> economyTimelines = new HashMap<>();
-    private final List<CombatEvent> combatEvents = new ArrayList<>();
+    private final DemParseProfile profile;
+    private final Map<String, HeroTimeline> heroTimelines = new HashMap<>();
+    private final CombatLog combatLog = new CombatLog();
     private final List<WardPlacement> wardPlacements = new ArrayList<>();
     private final List<AbilityUsage> abilityUsages = new ArrayList<>();
 
-    private int currentTick = 0;
+    private boolean complete;
+    private long sampleNanos;
 
-    @Insert
-    private Context ctx;
+    /** Thrown from a listener to stop reading once the replay has passed the profile's window. */
+    private static final class WindowPassed extends RuntimeException {
+        WindowPassed() {
+            super(null, null, false, false);
+        }
+    }
+
+    public DemProcessor() {
+        this(DemParseProfile.FULL);
+    }
+
+    public DemProcessor(DemParseProfile profile) {
+        this.profile = profile;
+    }
 
     public DemParseResult parse(Path demFile, long matchId) {
-        log.info("Starting DEM parse for match {} from {}", matchId, demFile);
+        log.info("Starting DEM parse for match {} from {} (profile {})", matchId, demFile, profile);
+        long start = System.nanoTime();
+
+        List<Object> listeners = new ArrayList<>();
+        listeners.add(new WindowGuard());
+        if (profile.samplesEntities()) listeners.add(new EntitySampler());
+        if (profile.readsCombatLog()) listeners.add(new CombatLogReader());
 
         try (MappedFileSource source = new MappedFileSource(demFile.toString())) {
-            new SimpleRunner(source).runWith(this);
+            new SimpleRunner(source).runWith(listeners.toArray());
+            complete = true;
         } catch (Exception e) {
-            log.error("Failed to parse DEM file for match {}", matchId, e);
+            if (causedByWindow(e)) {
+                complete = true;
+            } else {
+                log.error("Failed to parse DEM file for match {}", matchId, e);
+            }
         }
 
+        heroTimelines.values().forEach(HeroTimeline::trimToSize);
+        combatLog.trimToSize();
+
         DemParseResult result = new DemParseResult(matchId);
-        result.setHeroPositions(heroPositions);
-        result.setEconomyTimelines(economyTimelines);
-        result.setCombatEvents(combatEvents);
+        result.setHeroTimelines(heroTimelines);
+        result.setCombatLog(combatLog);
         result.setWardPlacements(wardPlacements);
         result.setAbilityUsages(abilityUsages);
 
-        log.info("DEM parse complete for match {}. Heroes tracked: {}, Combat events: {}, Wards: {}",
-                matchId, heroPositions.size(), combatEvents.size(), wardPlacements.size());
+        log.info("DEM parse complete for match {} in {}ms ({}ms sampling entities). Heroes tracked: {}, Combat events: {}, Wards: {}",
+                matchId, (System.nanoTime() - start) / 1_000_000, sampleNanos / 1_000_000,
+                heroTimelines.size(), combatLog.size(), wardPlacements.size());
 
         return result;
     }
 
-    @OnTickEnd
-    public void onTickEnd(boolean synthetic) {
-        currentTick = ctx.getTick();
+    /** False if the replay could not be read to the end of the window, in which case the result is partial. */
+    public boolean isComplete() {
+        return complete;
+    }
 
-        if (currentTick % SAMPLE_INTERVAL_TICKS != 0) return;
+    private static boolean causedByWindow(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WindowPassed) return true;
+        }
+        return false;
+    }
 
-        try {
-            Entities entities = ctx.getProcessor(Entities.class);
-            if (entities == null) return;
+    public class WindowGuard {
+        @Insert
+        private Context ctx;
 
-            // Iterate through hero entities
-            Iterator<Entity> it = entities.getAllByDtName("CDOTA_Unit_Hero");
-            while (it.hasNext()) {
-                Entity hero = it.next();
-                if (hero == null) continue;
+        @OnTickEnd
+        public void onTickEnd(boolean synthetic) {
+            if (ctx.getTick() > profile.getEndTick()) {
+                throw new WindowPassed();
+            }
+        }
+    }
 
-                String heroName = getEntityName(hero);
-                if (heroName == null || heroName.isEmpty()) continue;
+    /** Field paths of the sampled properties, resolved once per hero DT class; null where the class lacks one. */
+    private static final class HeroFields {
+        final FieldPath unitName;
+        final FieldPath cellX;
+        final FieldPath cellY;
+        final FieldPath netWorth;
+        final FieldPath lastHits;
+        final FieldPath denies;
+        final FieldPath xp;
 
-                // Position tracking
-                try {
-                    Integer cellX = hero.getProperty("CBodyComponent.m_cellX");
-                    Integer cellY = hero.getProperty("CBodyComponent.m_cellY");
-                    if (cellX != null && cellY != null) {
-                        heroPositions.computeIfAbsent(heroName, k -> new ArrayList<>())
-                                .add(new HeroPositionTick(currentTick, cellX, cellY));
-                    }
-                } catch (Exception ignored) {}
-
-                // Economy tracking
-                try {
-                    Integer netWorth = getIntProperty(hero, "m_iNetWorth");
-                    Integer lastHits = getIntProperty(hero, "m_iLastHitCount");
-                    Integer denies = getIntProperty(hero, "m_iDenyCount");
-                    Integer xp = getIntProperty(hero, "m_iCurrentXP");
-
-                    if (netWorth != null) {
-                        economyTimelines.computeIfAbsent(heroName, k -> new ArrayList<>())
-                                .add(new EconomyTick(currentTick,
-                                        netWorth != null ? netWorth : 0,
-                                        lastHits != null ? lastHits : 0,
-                                        denies != null ? denies : 0,
-                                        xp != null ? xp : 0));
-                    }
-                } catch (Exception ignored) {}
-            }
-        } catch (Exception e) {
-            // Silently skip tick errors
+        HeroFields(DTClass dtClass) {
+            unitName = dtClass.getFieldPathForName("m_iszUnitName");
+            cellX = dtClass.getFieldPathForName("CBodyComponent.m_cellX");
+            cellY = dtClass.getFieldPathForName("CBodyComponent.m_cellY");
+            netWorth = dtClass.getFieldPathForName("m_iNetWorth");
+            lastHits = dtClass.getFieldPathForName("m_iLastHitCount");
+            denies = dtClass.getFieldPathForName("m_iDenyCount");
+            xp = dtClass.getFieldPathForName("m_iCurrentXP");
         }
     }
 
-    @OnCombatLogEntry
-    public void onCombatLogEntry(CombatLogEntry cle) {
-        try {
-            String type = cle.getType().name();
-            String attacker = cle.getAttackerName();
-            String target = cle.getTargetName();
-            String inflictor = cle.getInflictorName();
-            int value = cle.getValue();
-
-            combatEvents.add(new CombatEvent(ctx.getTick(), type, attacker, target, inflictor, value));
-
-            // Detect ward placements
-            if ("DOTA_COMBATLOG_PURCHASE".equals(type)) {
-                if (inflictor != null && (inflictor.contains("ward_observer") || inflictor.contains("ward_sentry"))) {
-                    String wardType = inflictor.contains("observer") ? "observer" : "sentry";
-                    wardPlacements.add(new WardPlacement(ctx.getTick(), 0, 0, wardType, attacker));
+    /** A tracked hero entity: its class's field paths and the timeline it writes to. */
+    private record HeroSlot(HeroFields fields, HeroTimeline timeline) {}
+
+    @UsesEntities
+    public class EntitySampler {
+        @Insert
+        private Context ctx;
+
+        private final Map<DTClass, HeroFields> fieldsByClass = new IdentityHashMap<>();
+        private final Map<Integer, HeroSlot> slotsByHandle = new HashMap<>();
+
+        @OnTickEnd
+        public void onTickEnd(boolean synthetic) {
+            int currentTick = ctx.getTick();
+
+            if (currentTick % profile.getSampleIntervalTicks() != 0 || !profile.inWindow(currentTick)) return;
+
+            long start = System.nanoTime();
+            try {
+                Entities entities = ctx.getProcessor(Entities.class);
+                if (entities == null) return;
+
+                boolean positions = profile.has(DemParseProfile.Extractor.POSITIONS);
+                boolean economy = profile.has(DemParseProfile.Extractor.ECONOMY);
+
+                // Iterate through hero entities
+                Iterator<Entity> it = entities.getAllByDtName("CDOTA_Unit_Hero");
+                while (it.hasNext()) {
+                    Entity hero = it.next();
+                    if (hero == null) continue;
+
+                    HeroSlot slot = slotFor(hero);
+                    if (slot == null) continue;
+                    HeroFields fields = slot.fields();
+
+                    // Position tracking
+                    if (positions) {
+                        Object cellX = read(hero, fields.cellX);
+                        Object cellY = read(hero, fields.cellY);
+                        if (cellX instanceof Number x && cellY instanceof Number y) {
+                            slot.timeline().addPosition(currentTick, x.intValue(), y.intValue());
+                        }
+                    }
+
+                    // Economy tracking
+                    if (economy && read(hero, fields.netWorth) instanceof Number netWorth) {
+                        slot.timeline().addEconomy(currentTick,
+                                netWorth.intValue(),
+                                intOrZero(read(hero, fields.lastHits)),
+                                intOrZero(read(hero, fields.denies)),
+                                intOrZero(read(hero, fields.xp)));
+                    }
                 }
+            } catch (RuntimeException e) {
+                // A malformed entity should not abort the parse; skip the rest of this tick
+                log.debug("Skipping entity sample at tick {}", currentTick, e);
+            } finally {
+                sampleNanos += System.nanoTime() - start;
             }
+        }
 
-            // Detect ability usage
-            if ("DOTA_COMBATLOG_ABILITY".equals(type) && inflictor != null && !inflictor.isEmpty()) {
-                abilityUsages.add(new AbilityUsage(ctx.getTick(), inflictor, target));
-            }
-        } catch (Exception ignored) {}
+        /**
+         * Resolves a hero entity to its slot, caching by handle. Entities whose unit name is not set yet
+         * are retried on the next sample rather than cached.
+         */
+        private HeroSlot slotFor(Entity hero) {
+            int handle = hero.getHandle();
+            HeroSlot slot = slotsByHandle.get(handle);
+            if (slot != null) return slot;
+
+            DTClass dtClass = hero.getDtClass();
+            HeroFields fields = fieldsByClass.computeIfAbsent(dtClass, HeroFields::new);
+            String heroName = heroName(hero, dtClass, fields);
+            if (heroName == null || heroName.isEmpty()) return null;
+
+            slot = new HeroSlot(fields, heroTimelines.computeIfAbsent(heroName, k -> new HeroTimeline()));
+            slotsByHandle.put(handle, slot);
+            return slot;
+        }
     }
 
-    private String getEntityName(Entity entity) {
-        try {
-            Object name = entity.getProperty("m_iszUnitName");
-            return name != null ? name.toString() : null;
-        } catch (Exception e) {
+    public class CombatLogReader {
+        @Insert
+        private Context ctx;
+
+        @OnCombatLogEntry
+        public void onCombatLogEntry(CombatLogEntry cle) {
+            int tick = ctx.getTick();
+            if (!profile.inWindow(tick)) return;
             try {
-                String dtName = entity.getDtClass().getDtName();
-                if (dtName != null && dtName.startsWith("CDOTA_Unit_Hero_")) {
-                    return "npc_dota_hero_" + dtName.substring("CDOTA_Unit_Hero_".length()).toLowerCase();
+                int type = cle.getType().ordinal();
+                String attacker = cle.getAttackerName();
+                String target = cle.getTargetName();
+                String inflictor = cle.getInflictorName();
+
+                if (profile.has(DemParseProfile.Extractor.COMBAT)) {
+                    combatLog.add(tick, type, attacker, target, inflictor, cle.getValue());
+                }
+
+                // Detect ward placements
+                if (profile.has(DemParseProfile.Extractor.WARDS) && type == CombatLogTypes.PURCHASE) {
+                    if (inflictor != null && (inflictor.contains("ward_observer") || inflictor.contains("ward_sentry"))) {
+                        String wardType = inflictor.contains("observer") ? "observer" : "sentry";
+                        wardPlacements.add(new WardPlacement(tick, 0, 0, wardType, attacker));
+                    }
+                }
+
+                // Detect ability usage
+                if (profile.has(DemParseProfile.Extractor.ABILITIES)
+                        && type == CombatLogTypes.ABILITY && inflictor != null && !inflictor.isEmpty()) {
+                    abilityUsages.add(new AbilityUsage(tick, inflictor, target));
                 }
             } catch (Exception ignored) {}
-            return null;
         }
     }
 
-    private Integer getIntProperty(Entity entity, String property) {
-        try {
-            Object val = entity.getProperty(property);
-            if (val instanceof Number) {
-                return ((Number) val).intValue();
-            }
-        } catch (Exception ignored) {}
+    private static String heroName(Entity entity, DTClass dtClass, HeroFields fields) {
+        Object name = read(entity, fields.unitName);
+        if (name != null) return name.toString();
+        String dtName = dtClass.getDtName();
+        if (fields.unitName == null && dtName != null && dtName.startsWith("CDOTA_Unit_Hero_")) {
+            return "npc_dota_hero_" + dtName.substring("CDOTA_Unit_Hero_".length()).toLowerCase();
+        }
         return null;
     }
+
+    private static Object read(Entity entity, FieldPath fieldPath) {
+        return fieldPath != null ? entity.getPropertyForFieldPath(fieldPath) : null;
+    }
+
+    private static int intOrZero(Object value) {
+        return value instanceof Number n ? n.intValue() : 0;
+    }
 }
@@ -0,0 +1,120 @@
+package com.dota2analyzer.analysis.dem;
+
+import com.dota2analyzer.analysis.dem.model.HeroTimeline;
+import com.dota2analyzer.analysis.dem.model.IntColumn;
+
+import java.util.*;
+
+/**
+ * Bins hero position samples into fixed-resolution density grids, one for the whole replay and one per
+ * time window, so responses carry a few hundred numbers per hero instead of every sample.
+ *
+ * <p>Grids cover the replay's 0-255 cell space; a grid cell is {@code 256 / resolution} map cells wide.
+ * Each grid is sparse-encoded as a flat {@code [gap, count, gap, count, ...]} array over the row-major
+ * cell index ({@code y * resolution + x}), where {@code gap} is the distance from the previous non-empty
+ * cell (the first gap is from -1). An optional path keeps at most {@code pathPoints} evenly spaced
+ * {@code [cellX, cellY, tick]} samples.
+ */
+public class HeatmapAggregator {
+
+    private static final int CELL_SPACE = 256;
+
+    private final int resolution;
+    private final int windowTicks;
+    private final int pathPoints;
+
+    /**
+     * @param resolution  grid cells per axis (clamped to 1..256)
+     * @param windowTicks length of each time window in ticks; 0 or less for the whole-replay grid only
+     * @param pathPoints  maximum points in the downsampled path per hero; 0 for no path
+     */
+    public HeatmapAggregator(int resolution, int windowTicks, int pathPoints) {
+        this.resolution = Math.max(1, Math.min(CELL_SPACE, resolution));
+        this.windowTicks = windowTicks;
+        this.pathPoints = Math.max(0, pathPoints);
+    }
+
+    public Map<String, Object> aggregate(Map<String, HeroTimeline> timelines) {
+        Map<String, Object> heroes = new TreeMap<>();
+        for (Map.Entry<String, HeroTimeline> entry : timelines.entrySet()) {
+            HeroTimeline timeline = entry.getValue();
+            if (timeline.getPositionCount() > 0) {
+                heroes.put(entry.getKey(), aggregateHero(timeline));
+            }
+        }
+        if (heroes.isEmpty()) return Map.of();
+
+        Map<String, Object> heatmap = new LinkedHashMap<>();
+        heatmap.put("resolution", resolution);
+        heatmap.put("cellSpace", CELL_SPACE);
+        heatmap.put("windowTicks", Math.max(0, windowTicks));
+        heatmap.put("encoding", "sparse-gap");
+        heatmap.put("heroes", heroes);
+        return heatmap;
+    }
+
+    private Map<String, Object> aggregateHero(HeroTimeline timeline) {
+        IntColumn ticks = timeline.getPositionTicks();
+        IntColumn cellX = timeline.getCellX();
+        IntColumn cellY = timeline.getCellY();
+        int count = timeline.getPositionCount();
+
+        int[] total = new int[resolution * resolution];
+        // Windows are sparse in time too (no samples before the first tick), so keep them in tick order
+        TreeMap<Integer, int[]> windows = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            int index = bin(cellY.get(i)) * resolution + bin(cellX.get(i));
+            total[index]++;
+            if (windowTicks > 0) {
+                windows.computeIfAbsent(ticks.get(i) / windowTicks, w -> new int[resolution * resolution])[index]++;
+            }
+        }
+
+        Map<String, Object> hero = new LinkedHashMap<>();
+        hero.put("samples", count);
+        hero.put("total", encode(total));
+        if (windowTicks > 0) {
+            List<Map<String, Object>> encodedWindows = new ArrayList<>(windows.size());
+            for (Map.Entry<Integer, int[]> window : windows.entrySet()) {
+                Map<String, Object> w = new LinkedHashMap<>();
+                w.put("startTick", window.getKey() * windowTicks);
+                w.put("endTick", (window.getKey() + 1) * windowTicks);
+                w.put("cells", encode(window.getValue()));
+                encodedWindows.add(w);
+            }
+            hero.put("windows", encodedWindows);
+        }
+        if (pathPoints > 0) {
+            hero.put("path", downsamplePath(ticks, cellX, cellY, count));
+        }
+        return hero;
+    }
+
+    private int bin(int cell) {
+        int clamped = Math.max(0, Math.min(CELL_SPACE - 1, cell));
+        return clamped * resolution / CELL_SPACE;
+    }
+
+    private static int[] encode(int[] grid) {
+        IntColumn out = new IntColumn(64);
+        int previous = -1;
+        for (int i = 0; i < grid.length; i++) {
+            if (grid[i] == 0) continue;
+            out.add(i - previous);
+            out.add(grid[i]);
+            previous = i;
+        }
+        return out.toArray();
+    }
+
+    private int[][] downsamplePath(IntColumn ticks, IntColumn cellX, IntColumn cellY, int count) {
+        int points = Math.min(count, pathPoints);
+        int[][] path = new int[points][];
+        for (int p = 0; p < points; p++) {
+            // Spread indices evenly over the samples, always keeping the first and last one
+            int i = points == 1 ? 0 : (int) ((long) p * (count - 1) / (points - 1));
+            path[p] = new int[]{cellX.get(i), cellY.get(i), ticks.get(i)};
+        }
+        return path;
+    }
+}
@@ -0,0 +1,97 @@
+package com.dota2analyzer.analysis.dem.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary-encoded combat log. Unit and ability names repeat heavily, so each distinct string is stored
+ * once per parse and events keep only its id ({@link #NONE} for null) in int columns. Event types are
+ * stored as the ordinal of Clarity's combat log type enum.
+ */
+public class CombatLog {
+    public static final int NONE = -1;
+
+    private final List<String> dictionary;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final IntColumn ticks;
+    private final IntColumn types;
+    private final IntColumn attackers;
+    private final IntColumn targets;
+    private final IntColumn inflictors;
+    private final IntColumn values;
+
+    public CombatLog() {
+        this(new ArrayList<>(), new IntColumn(1024), new IntColumn(1024), new IntColumn(1024),
+                new IntColumn(1024), new IntColumn(1024), new IntColumn(1024));
+    }
+
+    CombatLog(List<String> dictionary, IntColumn ticks, IntColumn types, IntColumn attackers,
+              IntColumn targets, IntColumn inflictors, IntColumn values) {
+        this.dictionary = dictionary;
+        for (int id = 0; id < dictionary.size(); id++) {
+            ids.put(dictionary.get(id), id);
+        }
+        this.ticks = ticks;
+        this.types = types;
+        this.attackers = attackers;
+        this.targets = targets;
+        this.inflictors = inflictors;
+        this.values = values;
+    }
+
+    public void add(int tick, int type, String attacker, String target, String inflictor, int value) {
+        ticks.add(tick);
+        types.add(type);
+        attackers.add(encode(attacker));
+        targets.add(encode(target));
+        inflictors.add(encode(inflictor));
+        values.add(value);
+    }
+
+    public int size() { return ticks.size(); }
+
+    /** Id of {@code name} in the dictionary, or {@link #NONE} if no event uses it. */
+    public int idOf(String name) {
+        if (name == null) return NONE;
+        Integer id = ids.get(name);
+        return id != null ? id : NONE;
+    }
+
+    public String name(int id) {
+        return id == NONE ? null : dictionary.get(id);
+    }
+
+    public int dictionarySize() { return dictionary.size(); }
+
+    List<String> getDictionary() { return dictionary; }
+
+    public IntColumn getTicks() { return ticks; }
+    public IntColumn getTypes() { return types; }
+    public IntColumn getAttackers() { return attackers; }
+    public IntColumn getTargets() { return targets; }
+    public IntColumn getInflictors() { return inflictors; }
+    public IntColumn getValues() { return values; }
+
+    public void trimToSize() {
+        ticks.trimToSize();
+        types.trimToSize();
+        attackers.trimToSize();
+        targets.trimToSize();
+        inflictors.trimToSize();
+        values.trimToSize();
+    }
+
+    private int encode(String name) {
+        if (name == null) return NONE;
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+}
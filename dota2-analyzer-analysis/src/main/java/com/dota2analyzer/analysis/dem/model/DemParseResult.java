@@ -7,11 +7,9 @@ import java.util.Map;
 
 public class DemParseResult {
     private long matchId;
-    // heroName -> list of position ticks
-    private Map<String, List<HeroPositionTick>> heroPositions = new HashMap<>();
-    // heroName -> list of economy ticks
-    private Map<String, List<EconomyTick>> economyTimelines = new HashMap<>();
-    private List<CombatEvent> combatEvents = new ArrayList<>();
+    // heroName -> columnar position and economy samples
+    private Map<String, HeroTimeline> heroTimelines = new HashMap<>();
+    private CombatLog combatLog = new CombatLog();
     private List<WardPlacement> wardPlacements = new ArrayList<>();
     private List<AbilityUsage> abilityUsages = new ArrayList<>();
 
@@ -24,14 +22,11 @@ public class DemParseResult {
     public long getMatchId() { return matchId; }
     public void setMatchId(long matchId) { this.matchId = matchId; }
 
-    public Map<String, List<HeroPositionTick>> getHeroPositions() { return heroPositions; }
-    public void setHeroPositions(Map<String, List<HeroPositionTick>> heroPositions) { this.heroPositions = heroPositions; }
+    public Map<String, HeroTimeline> getHeroTimelines() { return heroTimelines; }
+    public void setHeroTimelines(Map<String, HeroTimeline> heroTimelines) { this.heroTimelines = heroTimelines; }
 
-    public Map<String, List<EconomyTick>> getEconomyTimelines() { return economyTimelines; }
-    public void setEconomyTimelines(Map<String, List<EconomyTick>> economyTimelines) { this.economyTimelines = economyTimelines; }
-
-    public List<CombatEvent> getCombatEvents() { return combatEvents; }
-    public void setCombatEvents(List<CombatEvent> combatEvents) { this.combatEvents = combatEvents; }
+    public CombatLog getCombatLog() { return combatLog; }
+    public void setCombatLog(CombatLog combatLog) { this.combatLog = combatLog; }
 
     public List<WardPlacement> getWardPlacements() { return wardPlacements; }
     public void setWardPlacements(List<WardPlacement> wardPlacements) { this.wardPlacements = wardPlacements; }
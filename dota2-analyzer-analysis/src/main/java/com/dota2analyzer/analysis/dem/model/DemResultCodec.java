@@ -0,0 +1,168 @@
+package com.dota2analyzer.analysis.dem.model;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary form of a {@link DemParseResult} for the on-disk parse cache.
+ * Layout: magic, format version, a caller-supplied key (parser hash and replay identity) that must match
+ * on read, then the Deflate-compressed body. Tick columns are delta-encoded so they compress well.
+ */
+public final class DemResultCodec {
+
+    private static final int MAGIC = 0x44454D50; // "DEMP"
+    // 2: combat log types are enum ordinals instead of dictionary ids
+    private static final byte FORMAT_VERSION = 2;
+
+    private DemResultCodec() {}
+
+    public static void write(DemParseResult result, long key, OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(FORMAT_VERSION);
+        header.writeLong(key);
+        header.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater);
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(compressed, 64 * 1024));
+            body.writeLong(result.getMatchId());
+
+            body.writeInt(result.getHeroTimelines().size());
+            for (Map.Entry<String, HeroTimeline> entry : result.getHeroTimelines().entrySet()) {
+                HeroTimeline t = entry.getValue();
+                body.writeUTF(entry.getKey());
+                writeColumn(body, t.getPositionTicks(), true);
+                writeColumn(body, t.getCellX(), false);
+                writeColumn(body, t.getCellY(), false);
+                writeColumn(body, t.getEconomyTicks(), true);
+                writeColumn(body, t.getNetWorth(), false);
+                writeColumn(body, t.getLastHits(), false);
+                writeColumn(body, t.getDenies(), false);
+                writeColumn(body, t.getXp(), false);
+            }
+
+            CombatLog log = result.getCombatLog();
+            body.writeInt(log.getDictionary().size());
+            for (String name : log.getDictionary()) {
+                body.writeUTF(name);
+            }
+            writeColumn(body, log.getTicks(), true);
+            writeColumn(body, log.getTypes(), false);
+            writeColumn(body, log.getAttackers(), false);
+            writeColumn(body, log.getTargets(), false);
+            writeColumn(body, log.getInflictors(), false);
+            writeColumn(body, log.getValues(), false);
+
+            body.writeInt(result.getWardPlacements().size());
+            for (WardPlacement ward : result.getWardPlacements()) {
+                body.writeInt(ward.getTick());
+                body.writeInt(ward.getCellX());
+                body.writeInt(ward.getCellY());
+                writeNullableUTF(body, ward.getType());
+                writeNullableUTF(body, ward.getPlayer());
+            }
+
+            body.writeInt(result.getAbilityUsages().size());
+            for (AbilityUsage usage : result.getAbilityUsages()) {
+                body.writeInt(usage.getTick());
+                writeNullableUTF(body, usage.getAbilityName());
+                writeNullableUTF(body, usage.getTargetName());
+            }
+            body.flush();
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the decoded result, or empty if the data was written with a different format or key.
+     */
+    public static Optional<DemParseResult> read(InputStream in, long expectedKey) throws IOException {
+        if (!hasKey(in, expectedKey)) {
+            return Optional.empty();
+        }
+
+        DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 64 * 1024));
+        DemParseResult result = new DemParseResult(body.readLong());
+
+        int heroCount = body.readInt();
+        Map<String, HeroTimeline> timelines = new HashMap<>(heroCount * 2);
+        for (int i = 0; i < heroCount; i++) {
+            String hero = body.readUTF();
+            timelines.put(hero, new HeroTimeline(
+                    readColumn(body, true), readColumn(body, false), readColumn(body, false),
+                    readColumn(body, true), readColumn(body, false), readColumn(body, false),
+                    readColumn(body, false), readColumn(body, false)));
+        }
+        result.setHeroTimelines(timelines);
+
+        int dictionarySize = body.readInt();
+        List<String> dictionary = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary.add(body.readUTF());
+        }
+        result.setCombatLog(new CombatLog(dictionary,
+                readColumn(body, true), readColumn(body, false), readColumn(body, false),
+                readColumn(body, false), readColumn(body, false), readColumn(body, false)));
+
+        int wardCount = body.readInt();
+        List<WardPlacement> wards = new ArrayList<>(wardCount);
+        for (int i = 0; i < wardCount; i++) {
+            wards.add(new WardPlacement(body.readInt(), body.readInt(), body.readInt(),
+                    readNullableUTF(body), readNullableUTF(body)));
+        }
+        result.setWardPlacements(wards);
+
+        int abilityCount = body.readInt();
+        List<AbilityUsage> abilities = new ArrayList<>(abilityCount);
+        for (int i = 0; i < abilityCount; i++) {
+            abilities.add(new AbilityUsage(body.readInt(), readNullableUTF(body), readNullableUTF(body)));
+        }
+        result.setAbilityUsages(abilities);
+        return Optional.of(result);
+    }
+
+    /** Reads only the header and checks it was written in the current format with {@code expectedKey}. */
+    public static boolean hasKey(InputStream in, long expectedKey) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        return header.readInt() == MAGIC && header.readByte() == FORMAT_VERSION && header.readLong() == expectedKey;
+    }
+
+    private static void writeColumn(DataOutputStream out, IntColumn column, boolean delta) throws IOException {
+        out.writeInt(column.size());
+        int previous = 0;
+        for (int i = 0; i < column.size(); i++) {
+            int value = column.get(i);
+            out.writeInt(delta ? value - previous : value);
+            previous = value;
+        }
+    }
+
+    private static IntColumn readColumn(DataInputStream in, boolean delta) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Negative column size " + size);
+        int[] values = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int value = in.readInt();
+            values[i] = delta ? previous + value : value;
+            previous = values[i];
+        }
+        return IntColumn.of(values);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
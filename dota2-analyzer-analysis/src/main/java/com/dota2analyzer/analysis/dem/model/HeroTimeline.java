@@ -0,0 +1,71 @@
+package com.dota2analyzer.analysis.dem.model;
+
+/**
+ * Per-hero samples stored as parallel int columns: row {@code i} of the position columns is one
+ * position sample, row {@code i} of the economy columns one economy sample.
+ */
+public class HeroTimeline {
+    private final IntColumn positionTicks;
+    private final IntColumn cellX;
+    private final IntColumn cellY;
+
+    private final IntColumn economyTicks;
+    private final IntColumn netWorth;
+    private final IntColumn lastHits;
+    private final IntColumn denies;
+    private final IntColumn xp;
+
+    public HeroTimeline() {
+        this(new IntColumn(), new IntColumn(), new IntColumn(),
+                new IntColumn(), new IntColumn(), new IntColumn(), new IntColumn(), new IntColumn());
+    }
+
+    HeroTimeline(IntColumn positionTicks, IntColumn cellX, IntColumn cellY,
+                 IntColumn economyTicks, IntColumn netWorth, IntColumn lastHits, IntColumn denies, IntColumn xp) {
+        this.positionTicks = positionTicks;
+        this.cellX = cellX;
+        this.cellY = cellY;
+        this.economyTicks = economyTicks;
+        this.netWorth = netWorth;
+        this.lastHits = lastHits;
+        this.denies = denies;
+        this.xp = xp;
+    }
+
+    public void addPosition(int tick, int x, int y) {
+        positionTicks.add(tick);
+        cellX.add(x);
+        cellY.add(y);
+    }
+
+    public void addEconomy(int tick, int netWorthValue, int lastHitsValue, int deniesValue, int xpValue) {
+        economyTicks.add(tick);
+        netWorth.add(netWorthValue);
+        lastHits.add(lastHitsValue);
+        denies.add(deniesValue);
+        xp.add(xpValue);
+    }
+
+    public int getPositionCount() { return positionTicks.size(); }
+    public IntColumn getPositionTicks() { return positionTicks; }
+    public IntColumn getCellX() { return cellX; }
+    public IntColumn getCellY() { return cellY; }
+
+    public int getEconomyCount() { return economyTicks.size(); }
+    public IntColumn getEconomyTicks() { return economyTicks; }
+    public IntColumn getNetWorth() { return netWorth; }
+    public IntColumn getLastHits() { return lastHits; }
+    public IntColumn getDenies() { return denies; }
+    public IntColumn getXp() { return xp; }
+
+    public void trimToSize() {
+        positionTicks.trimToSize();
+        cellX.trimToSize();
+        cellY.trimToSize();
+        economyTicks.trimToSize();
+        netWorth.trimToSize();
+        lastHits.trimToSize();
+        denies.trimToSize();
+        xp.trimToSize();
+    }
+}
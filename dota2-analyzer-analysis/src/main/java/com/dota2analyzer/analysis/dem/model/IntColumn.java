@@ -0,0 +1,54 @@
+package com.dota2analyzer.analysis.dem.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Growable primitive int array, the storage unit of the columnar parse result.
+ */
+public class IntColumn {
+    private int[] values;
+    private int size;
+
+    public IntColumn() {
+        this(64);
+    }
+
+    public IntColumn(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /** Wrap {@code values} without copying. */
+    public static IntColumn of(int[] values) {
+        IntColumn column = new IntColumn(0);
+        column.values = values.length > 0 ? values : new int[1];
+        column.size = values.length;
+        return column;
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public void trimToSize() {
+        if (values.length > size) {
+            values = Arrays.copyOf(values, Math.max(1, size));
+        }
+    }
+}
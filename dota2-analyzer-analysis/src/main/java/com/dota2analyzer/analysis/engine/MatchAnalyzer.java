@@ -8,6 +8,12 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,6 +27,7 @@ public class MatchAnalyzer {
     private final boolean cacheOnly;
     private final boolean disableBenchmarks;
     private final boolean avoidExternalWhenCached;
+    private final int analysisConcurrency;
 
     private static final Set<String> DISABLE_HERO_NAMES = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
     static {
@@ -37,13 +44,16 @@ public class MatchAnalyzer {
     }
 
     public MatchAnalyzer(DotaDataProvider client, HeroDataCache heroData, MatchCache cache,
-                         boolean cacheOnly, boolean disableBenchmarks, boolean avoidExternalWhenCached) {
+                         boolean cacheOnly, boolean disableBenchmarks, boolean avoidExternalWhenCached,
+                         int analysisConcurrency) {
         this.client = client;
         this.heroData = heroData;
         this.cache = cache;
         this.cacheOnly = cacheOnly;
         this.disableBenchmarks = disableBenchmarks;
         this.avoidExternalWhenCached = avoidExternalWhenCached;
+        // Each in-flight analysis holds at most one pooled connection, so never exceed the pool.
+        this.analysisConcurrency = Math.max(1, Math.min(analysisConcurrency, cache.getMaxPoolSize()));
     }
 
     public List<MatchAnalysisResult> analyzeRecent(long accountId, int desiredCount, int fetchLimit,
@@ -81,15 +91,9 @@ public class MatchAnalyzer {
 
         matches.sort(Comparator.comparingInt(RecentMatch::getStartTime).reversed());
 
-        List<MatchAnalysisResult> results = new ArrayList<>();
-        for (RecentMatch match : matches) {
-            MatchAnalysisResult result = analyzeMatch(match, accountId, requestParse, onlyPos1);
-            if (result != null) {
-                results.add(result);
-            } else {
-                log.debug("Match {} filtered out (onlyPos1={})", match.getMatchId(), onlyPos1);
-            }
-        }
+        List<MatchAnalysisResult> results = onlyPos1
+                ? analyzePosition1Until(matches, accountId, requestParse, desiredCount)
+                : analyzeAll(matches, accountId, requestParse);
 
         List<MatchAnalysisResult> selected = MatchSelection.selectDesired(results, desiredCount, onlyPos1);
         if (onlyPos1 && selected.size() < desiredCount) {
@@ -99,6 +103,103 @@ public class MatchAnalyzer {
         return selected;
     }
 
+    private List<MatchAnalysisResult> analyzeAll(List<RecentMatch> matches, long accountId, boolean requestParse) {
+        Map<Long, MatchDetail> prefetched = prefetchDetails(matches, accountId);
+        List<MatchAnalysisResult> analyses = mapConcurrently(matches,
+                match -> analyzeMatch(match, accountId, requestParse, false, prefetched));
+        List<MatchAnalysisResult> results = new ArrayList<>();
+        for (int i = 0; i < analyses.size(); i++) {
+            if (analyses.get(i) != null) {
+                results.add(analyses.get(i));
+            } else {
+                log.debug("Match {} filtered out (onlyPos1=false)", matches.get(i).getMatchId());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Two-phase onlyPos1 selection. Matches are walked newest-first in batches: each batch is first
+     * classified from its MatchDetail alone, then only the position-1 matches still needed get the
+     * full analysis. Stops as soon as {@code desiredCount} results are collected.
+     */
+    private List<MatchAnalysisResult> analyzePosition1Until(List<RecentMatch> matches, long accountId,
+                                                            boolean requestParse, int desiredCount) {
+        List<MatchAnalysisResult> results = new ArrayList<>();
+        int scanned = 0;
+        while (scanned < matches.size() && results.size() < desiredCount) {
+            int batchSize = Math.max(analysisConcurrency, desiredCount - results.size());
+            List<RecentMatch> batch = matches.subList(scanned, Math.min(scanned + batchSize, matches.size()));
+            scanned += batch.size();
+
+            Map<Long, MatchDetail> prefetched = prefetchDetails(batch, accountId);
+            List<PreparedMatch> candidates = new ArrayList<>();
+            for (PreparedMatch prepared : mapConcurrently(batch, m -> prepareMatch(m, accountId, requestParse, prefetched))) {
+                if (prepared != null && prepared.player != null && prepared.isPos1) {
+                    candidates.add(prepared);
+                }
+            }
+
+            int needed = desiredCount - results.size();
+            List<PreparedMatch> toAnalyze = candidates.subList(0, Math.min(needed, candidates.size()));
+            for (MatchAnalysisResult result : mapConcurrently(toAnalyze, this::buildAnalysis)) {
+                if (result != null) results.add(result);
+            }
+        }
+        log.info("OnlyPos1 selection scanned {}/{} matches, analyzed {}", scanned, matches.size(), results.size());
+        return results;
+    }
+
+    private Map<Long, MatchDetail> prefetchDetails(List<RecentMatch> matches, long accountId) {
+        List<Long> matchIds = matches.stream().map(RecentMatch::getMatchId).collect(Collectors.toList());
+        return cache.getMatchDetails(matchIds, matchTtl(accountId));
+    }
+
+    private Duration matchTtl(long accountId) {
+        return cache.isPermanentAccount(accountId) ? null : Duration.ofDays(7);
+    }
+
+    /**
+     * Run {@code task} for every item on virtual threads, at most {@code analysisConcurrency} at a time.
+     * The returned list is index-aligned with {@code items}. If a task throws, the rest are cancelled and its
+     * exception is rethrown, as the serial loop did; an interrupt cancels them all and is rethrown too.
+     */
+    private <T, R> List<R> mapConcurrently(List<T> items, Function<T, R> task) {
+        List<R> results = new ArrayList<>(items.size());
+        if (items.isEmpty()) return results;
+
+        Semaphore permits = new Semaphore(analysisConcurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.apply(item);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            try {
+                for (Future<R> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                if (e.getCause() instanceof Error cause) throw cause;
+                throw new IllegalStateException("Match analysis task failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while analyzing matches", e);
+            }
+        }
+        return results;
+    }
+
     private boolean shouldRefreshRecentMatches(long accountId, List<RecentMatch> cached) {
         try {
             List<RecentMatch> latest = client.getPlayerMatches(accountId, 1, 0, 7);
@@ -135,9 +236,42 @@ public class MatchAnalyzer {
     }
 
     public MatchAnalysisResult analyzeMatch(RecentMatch match, long accountId, boolean requestParse, boolean onlyPos1) {
+        return analyzeMatch(match, accountId, requestParse, onlyPos1, null);
+    }
+
+    private MatchAnalysisResult analyzeMatch(RecentMatch match, long accountId, boolean requestParse, boolean onlyPos1,
+                                             Map<Long, MatchDetail> prefetched) {
         heroData.ensureLoaded();
-        Duration matchTtl = cache.isPermanentAccount(accountId) ? null : Duration.ofDays(7);
-        MatchDetail detail = cache.getMatchDetail(match.getMatchId(), matchTtl);
+        PreparedMatch prepared = prepareMatch(match, accountId, requestParse, prefetched);
+        if (prepared == null) return null;
+        if (prepared.player == null) {
+            return onlyPos1 ? null : buildUnparsedResult(match);
+        }
+        if (onlyPos1 && !prepared.isPos1) {
+            return null;
+        }
+        return buildAnalysis(prepared);
+    }
+
+    private static class PreparedMatch {
+        RecentMatch match;
+        MatchDetail detail;
+        boolean fromCache;
+        PlayerDetail player;
+        boolean isPos1;
+    }
+
+    /**
+     * Load the match detail and classify the player's position without running any analysis.
+     * Returns null when the detail is uncached in cache-only mode; {@code player} is null when
+     * the match is unparsed or the account is not in it. When {@code prefetched} is given it is
+     * the authoritative cache lookup result and the cache is not queried again.
+     */
+    private PreparedMatch prepareMatch(RecentMatch match, long accountId, boolean requestParse,
+                                       Map<Long, MatchDetail> prefetched) {
+        MatchDetail detail = prefetched != null
+                ? prefetched.get(match.getMatchId())
+                : cache.getMatchDetail(match.getMatchId(), matchTtl(accountId));
         boolean fromCache = detail != null;
         if (detail == null) {
             if (cacheOnly) {
@@ -157,24 +291,35 @@ public class MatchAnalyzer {
             log.info("Match cache hit for {}", match.getMatchId());
         }
 
+        PreparedMatch prepared = new PreparedMatch();
+        prepared.match = match;
+        prepared.detail = detail;
+        prepared.fromCache = fromCache;
+
         if (detail == null || detail.getPlayers() == null || detail.getPlayers().isEmpty()) {
             log.warn("Match detail missing or unparsed for {}", match.getMatchId());
-            return onlyPos1 ? null : buildUnparsedResult(match);
+            return prepared;
         }
 
         int accountId32 = (int) accountId;
-        PlayerDetail player = detail.getPlayers().stream()
+        prepared.player = detail.getPlayers().stream()
                 .filter(p -> p.getAccountId() != null && p.getAccountId() == accountId32)
                 .findFirst().orElse(null);
-        if (player == null) {
+        if (prepared.player == null) {
             log.warn("Player {} not found in match {}", accountId, match.getMatchId());
-            return onlyPos1 ? null : buildUnparsedResult(match);
+            return prepared;
         }
 
-        boolean isPos1 = isLikelyPosition1(player, detail.getPlayers(), match.getDuration());
-        if (onlyPos1 && !isPos1) {
-            return null;
-        }
+        prepared.isPos1 = isLikelyPosition1(prepared.player, detail.getPlayers(), match.getDuration());
+        return prepared;
+    }
+
+    private MatchAnalysisResult buildAnalysis(PreparedMatch prepared) {
+        RecentMatch match = prepared.match;
+        MatchDetail detail = prepared.detail;
+        PlayerDetail player = prepared.player;
+        boolean fromCache = prepared.fromCache;
+        boolean isPos1 = prepared.isPos1;
 
         boolean isRadiant = match.getPlayerSlot() < 128;
         boolean won = (isRadiant && match.isRadiantWin()) || (!isRadiant && !match.isRadiantWin());
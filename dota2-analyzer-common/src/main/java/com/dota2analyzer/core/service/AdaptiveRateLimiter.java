@@ -0,0 +1,157 @@
+package com.dota2analyzer.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD controller for the {@link RequestScheduler} rate.
+ * Every successful call raises the rate by {@code increaseStep} up to {@code maxRate}; a 429 halves it
+ * down to {@code minRate} and, if upstream sent Retry-After, pauses the scheduler for that long.
+ * Requests already in flight when the rate drops were sent at the old rate, so further 429s within the
+ * Retry-After pause (and at least {@code decreaseWindowMs}) don't lower it again; a burst of rejections
+ * counts as one.
+ * When OpenDota reports its remaining per-minute quota the rate is also capped to spread that quota
+ * over a minute, so we slow down before hitting the wall rather than after.
+ */
+public class AdaptiveRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+    private static final String REMAINING_MINUTE_HEADER = "X-Rate-Limit-Remaining-Minute";
+    private static final String REMAINING_MONTH_HEADER = "X-Rate-Limit-Remaining-Month";
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long DEFAULT_DECREASE_WINDOW_MS = 5000;
+
+    private final RequestScheduler scheduler;
+    private final double minRate;
+    private final double maxRate;
+    private final double increaseStep;
+    private final long decreaseWindowMs;
+
+    // Rate changes read the scheduler's rate and write it back; the lock keeps them from losing each other
+    private final ReentrantLock rateLock = new ReentrantLock();
+    private long decreaseHoldUntilNanos = System.nanoTime();
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private volatile Integer remainingMinute;
+    private volatile Integer remainingMonth;
+
+    public AdaptiveRateLimiter(RequestScheduler scheduler, double minRate, double maxRate, double increaseStep) {
+        this(scheduler, minRate, maxRate, increaseStep, DEFAULT_DECREASE_WINDOW_MS);
+    }
+
+    public AdaptiveRateLimiter(RequestScheduler scheduler, double minRate, double maxRate, double increaseStep,
+                               long decreaseWindowMs) {
+        this.scheduler = scheduler;
+        this.minRate = minRate;
+        this.maxRate = Math.max(minRate, maxRate);
+        this.increaseStep = increaseStep;
+        this.decreaseWindowMs = Math.max(0, decreaseWindowMs);
+    }
+
+    public void onSuccess(HttpHeaders headers) {
+        successes.increment();
+        readQuota(headers);
+
+        rateLock.lock();
+        try {
+            double rate = Math.min(maxRate, scheduler.getPermitsPerSecond() + increaseStep);
+            Integer remaining = remainingMinute;
+            if (remaining != null) {
+                rate = Math.min(rate, Math.max(minRate, remaining / 60.0));
+            }
+            scheduler.setPermitsPerSecond(rate);
+        } finally {
+            rateLock.unlock();
+        }
+    }
+
+    /**
+     * Record a 429 and return how long the caller should wait before retrying:
+     * the upstream Retry-After when present, otherwise {@code fallbackBackoffMs}.
+     */
+    public long onThrottled(HttpHeaders headers, long fallbackBackoffMs) {
+        throttled.increment();
+        readQuota(headers);
+
+        Long retryAfterMs = parseRetryAfter(headers);
+        double rate;
+        rateLock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - decreaseHoldUntilNanos >= 0) {
+                rate = Math.max(minRate, scheduler.getPermitsPerSecond() * DECREASE_FACTOR);
+                scheduler.setPermitsPerSecond(rate);
+                long holdMs = Math.max(decreaseWindowMs, retryAfterMs != null ? retryAfterMs : 0);
+                decreaseHoldUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(holdMs);
+            } else {
+                rate = scheduler.getPermitsPerSecond();
+            }
+        } finally {
+            rateLock.unlock();
+        }
+
+        if (retryAfterMs != null) {
+            scheduler.pause(retryAfterMs);
+            log.warn("OpenDota 429 with Retry-After {}ms, rate now {}/s", retryAfterMs, String.format("%.3f", rate));
+            return retryAfterMs;
+        }
+        log.warn("OpenDota 429, rate now {}/s", String.format("%.3f", rate));
+        return fallbackBackoffMs;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("permitsPerSecond", scheduler.getPermitsPerSecond());
+        stats.put("minRate", minRate);
+        stats.put("maxRate", maxRate);
+        stats.put("successes", successes.sum());
+        stats.put("throttled", throttled.sum());
+        stats.put("remainingMinute", remainingMinute);
+        stats.put("remainingMonth", remainingMonth);
+        return stats;
+    }
+
+    private void readQuota(HttpHeaders headers) {
+        if (headers == null) return;
+        Integer minute = parseInt(headers.getFirst(REMAINING_MINUTE_HEADER));
+        if (minute != null) remainingMinute = minute;
+        Integer month = parseInt(headers.getFirst(REMAINING_MONTH_HEADER));
+        if (month != null) remainingMonth = month;
+    }
+
+    private static Long parseRetryAfter(HttpHeaders headers) {
+        if (headers == null) return null;
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) return null;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,32 +1,180 @@
 package com.dota2analyzer.core.service;
 
 import com.dota2analyzer.core.model.opendota.*;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class HeroDataCache {
+public class HeroDataCache implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(HeroDataCache.class);
+    private static final String BUNDLED_SNAPSHOT = "/hero-data-snapshot.json";
+    private static final ObjectMapper snapshotMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     private final OpenDotaClient client;
     private final MatchCache cache;
     private final boolean cacheOnly;
+    private final Duration maxAge;
+    private final Path snapshotFile;
     private final ReentrantLock gate = new ReentrantLock();
+    private ScheduledExecutorService refresher;
 
-    private Map<Integer, String> heroNames = new HashMap<>();
-    private Map<Integer, String> heroKeys = new HashMap<>();
-    private Map<Integer, Double> heroWinRates = new HashMap<>();
-    private Map<String, ItemConstants> itemConstants = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-    private Map<Integer, String> itemIdToKey = new HashMap<>();
+    // Everything readers see, published as a whole; reloads build a new one and swap the reference
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
     private volatile boolean loaded;
 
+    /**
+     * Immutable view of the loaded data. Hero and item ids are small and dense, so per-id values live in
+     * arrays indexed by id; item keys are lower-cased once at build time so lookups are a single hash probe.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(List.of(), List.of(), Map.of(),
+                new String[0], new String[0], new double[0], Map.of(), new String[0]);
+        private static final int MAX_DENSE_ID = 1 << 16;
+
+        // Source rows, kept so a partial reload can fall back per part and for the on-disk copy
+        final List<Hero> heroes;
+        final List<HeroStats> stats;
+        final Map<String, ItemConstants> items;
+
+        final String[] heroNames;
+        final String[] heroKeys;
+        final double[] heroWinRates;
+        final Map<String, ItemConstants> itemsByKey;
+        final String[] itemKeysById;
+
+        private Snapshot(List<Hero> heroes, List<HeroStats> stats, Map<String, ItemConstants> items,
+                         String[] heroNames, String[] heroKeys, double[] heroWinRates,
+                         Map<String, ItemConstants> itemsByKey, String[] itemKeysById) {
+            this.heroes = heroes;
+            this.stats = stats;
+            this.items = items;
+            this.heroNames = heroNames;
+            this.heroKeys = heroKeys;
+            this.heroWinRates = heroWinRates;
+            this.itemsByKey = itemsByKey;
+            this.itemKeysById = itemKeysById;
+        }
+
+        static Snapshot build(List<Hero> heroes, List<HeroStats> stats, Map<String, ItemConstants> items) {
+            int maxHeroId = 0;
+            for (Hero h : heroes) {
+                if (h.getId() > 0 && h.getId() < MAX_DENSE_ID) maxHeroId = Math.max(maxHeroId, h.getId());
+            }
+            for (HeroStats s : stats) {
+                if (s.getId() > 0 && s.getId() < MAX_DENSE_ID) maxHeroId = Math.max(maxHeroId, s.getId());
+            }
+            String[] names = new String[maxHeroId + 1];
+            String[] keys = new String[maxHeroId + 1];
+            double[] winRates = new double[maxHeroId + 1];
+            Arrays.fill(winRates, Double.NaN);
+            for (Hero h : heroes) {
+                if (h.getId() <= 0 || h.getId() > maxHeroId) continue;
+                names[h.getId()] = h.getLocalizedName();
+                keys[h.getId()] = h.getName();
+            }
+            for (HeroStats s : stats) {
+                if (s.getId() <= 0 || s.getId() > maxHeroId) continue;
+                if (s.getProPick() > 0) {
+                    winRates[s.getId()] = (double) s.getProWin() / s.getProPick();
+                }
+            }
+
+            // Sorted case-insensitively so the key chosen for a shared id is the same as before
+            TreeMap<String, ItemConstants> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, ItemConstants> entry : items.entrySet()) {
+                if (entry.getKey() != null) sorted.put(entry.getKey(), entry.getValue());
+            }
+            Map<String, ItemConstants> byKey = new HashMap<>(sorted.size() * 2);
+            int maxItemId = 0;
+            for (Map.Entry<String, ItemConstants> entry : sorted.entrySet()) {
+                byKey.put(normalize(entry.getKey()), entry.getValue());
+                Integer id = entry.getValue() != null ? entry.getValue().getId() : null;
+                if (id != null && id > 0 && id < MAX_DENSE_ID) maxItemId = Math.max(maxItemId, id);
+            }
+            String[] itemKeys = new String[maxItemId + 1];
+            for (Map.Entry<String, ItemConstants> entry : sorted.entrySet()) {
+                Integer id = entry.getValue() != null ? entry.getValue().getId() : null;
+                if (id != null && id > 0 && id <= maxItemId && itemKeys[id] == null && !entry.getKey().isBlank()) {
+                    itemKeys[id] = entry.getKey();
+                }
+            }
+            return new Snapshot(Collections.unmodifiableList(new ArrayList<>(heroes)),
+                    Collections.unmodifiableList(new ArrayList<>(stats)), Collections.unmodifiableMap(new HashMap<>(items)),
+                    names, keys, winRates, Collections.unmodifiableMap(byKey), itemKeys);
+        }
+
+        int heroCount() {
+            int n = 0;
+            for (String name : heroNames) if (name != null) n++;
+            return n;
+        }
+
+        int winRateCount() {
+            int n = 0;
+            for (double rate : heroWinRates) if (!Double.isNaN(rate)) n++;
+            return n;
+        }
+    }
+
+    /** On-disk form of a snapshot, used to warm-start without MySQL or OpenDota. */
+    private record SnapshotFile(List<Hero> heroes, List<HeroStats> heroStats, Map<String, ItemConstants> items) {}
+
     public HeroDataCache(OpenDotaClient client, MatchCache cache, boolean cacheOnly) {
+        this(client, cache, cacheOnly, Duration.ofDays(30), null);
+    }
+
+    /**
+     * @param maxAge       age after which cached rows are refetched from OpenDota (when not cache-only)
+     * @param snapshotFile where the last good snapshot is written for warm starts; null disables it
+     */
+    public HeroDataCache(OpenDotaClient client, MatchCache cache, boolean cacheOnly, Duration maxAge, Path snapshotFile) {
         this.client = client;
         this.cache = cache;
         this.cacheOnly = cacheOnly;
+        this.maxAge = maxAge;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Warm-start from the on-disk (or bundled) snapshot if there is one, then rebuild from the cache in the
+     * background now and every {@code refreshInterval}. Requests are served from the warm snapshot meanwhile;
+     * without one, {@link #ensureLoaded()} waits for the first background load as before.
+     */
+    public void start(Duration refreshInterval) {
+        if (warmStart()) {
+            log.info("Hero data warm-started from snapshot. Heroes={} Items={}",
+                    snapshot.heroCount(), snapshot.itemsByKey.size());
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("hero-data-refresh").factory());
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.warn("Hero data refresh failed, keeping current snapshot", e);
+            }
+        }, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
     }
 
     public void ensureLoaded() {
@@ -34,134 +182,191 @@ public class HeroDataCache {
         gate.lock();
         try {
             if (loaded) return;
+            load();
+        } finally {
+            gate.unlock();
+        }
+    }
 
-            // Load heroes
-            List<Hero> heroes = cache.getHeroes(Duration.ofDays(30));
-            if (heroes == null || heroes.isEmpty()) {
-                if (cacheOnly) {
-                    log.warn("Hero cache empty and cache-only enabled. Skipping OpenDota.");
-                    heroes = new ArrayList<>();
-                } else {
-                    log.info("Hero cache empty, fetching from OpenDota");
-                    heroes = client.getHeroes();
-                    if (!heroes.isEmpty()) {
-                        cache.saveHeroes(heroes);
-                    }
-                }
-            } else if (heroes.stream().anyMatch(h -> h.getName() == null || h.getName().isBlank())) {
-                if (cacheOnly) {
-                    log.warn("Hero cache missing key names and cache-only enabled.");
-                } else {
-                    log.info("Hero cache missing key names, refreshing from OpenDota");
-                    List<Hero> refreshed = client.getHeroes();
-                    if (!refreshed.isEmpty()) {
-                        heroes = refreshed;
-                        cache.saveHeroes(heroes);
-                    }
+    /**
+     * Rebuild the snapshot from the cache (and OpenDota where the cache is stale) and swap it in.
+     * Readers keep using the previous snapshot until the new one is complete.
+     */
+    public void reload() {
+        gate.lock();
+        try {
+            load();
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    private void load() {
+        // Load heroes
+        List<Hero> heroes = cache.getHeroes(maxAge);
+        if (heroes == null || heroes.isEmpty()) {
+            if (cacheOnly) {
+                log.warn("Hero cache empty and cache-only enabled. Skipping OpenDota.");
+                heroes = new ArrayList<>();
+            } else {
+                log.info("Hero cache empty, fetching from OpenDota");
+                heroes = client.getHeroes();
+                if (!heroes.isEmpty()) {
+                    cache.saveHeroes(heroes);
                 }
             }
-
-            heroNames = new HashMap<>();
-            heroKeys = new HashMap<>();
-            for (Hero h : heroes) {
-                heroNames.put(h.getId(), h.getLocalizedName());
-                heroKeys.put(h.getId(), h.getName());
-            }
-
-            // Load hero stats
-            List<HeroStats> stats = cache.getHeroStats(Duration.ofDays(30));
-            if (stats == null || stats.isEmpty()) {
-                if (cacheOnly) {
-                    log.warn("Hero stats cache empty and cache-only enabled.");
-                    stats = new ArrayList<>();
-                } else {
-                    log.info("Hero stats cache empty, fetching from OpenDota");
-                    stats = client.getHeroStats();
-                    if (!stats.isEmpty()) {
-                        cache.saveHeroStats(stats);
-                    }
+        } else if (heroes.stream().anyMatch(h -> h.getName() == null || h.getName().isBlank())) {
+            if (cacheOnly) {
+                log.warn("Hero cache missing key names and cache-only enabled.");
+            } else {
+                log.info("Hero cache missing key names, refreshing from OpenDota");
+                List<Hero> refreshed = client.getHeroes();
+                if (!refreshed.isEmpty()) {
+                    heroes = refreshed;
+                    cache.saveHeroes(heroes);
                 }
             }
+        }
 
-            heroWinRates = new HashMap<>();
-            for (HeroStats s : stats) {
-                if (s.getProPick() > 0) {
-                    heroWinRates.put(s.getId(), (double) s.getProWin() / s.getProPick());
+        // Load hero stats
+        List<HeroStats> stats = cache.getHeroStats(maxAge);
+        if (stats == null || stats.isEmpty()) {
+            if (cacheOnly) {
+                log.warn("Hero stats cache empty and cache-only enabled.");
+                stats = new ArrayList<>();
+            } else {
+                log.info("Hero stats cache empty, fetching from OpenDota");
+                stats = client.getHeroStats();
+                if (!stats.isEmpty()) {
+                    cache.saveHeroStats(stats);
                 }
             }
+        }
 
-            // Load item constants
-            Map<String, ItemConstants> items = cache.getItemConstants(Duration.ofDays(30));
-            if (items == null || items.isEmpty()) {
-                if (cacheOnly) {
-                    log.warn("Item constants cache empty and cache-only enabled.");
-                    items = new HashMap<>();
-                } else {
-                    log.info("Item constants cache empty, fetching from OpenDota");
-                    items = client.getItemConstants();
-                    if (!items.isEmpty()) {
-                        cache.saveItemConstants(items);
-                    }
+        // Load item constants
+        Map<String, ItemConstants> items = cache.getItemConstants(maxAge);
+        if (items == null || items.isEmpty()) {
+            if (cacheOnly) {
+                log.warn("Item constants cache empty and cache-only enabled.");
+                items = new HashMap<>();
+            } else {
+                log.info("Item constants cache empty, fetching from OpenDota");
+                items = client.getItemConstants();
+                if (!items.isEmpty()) {
+                    cache.saveItemConstants(items);
                 }
-            } else if (items.values().stream().allMatch(i -> i == null || i.getId() == null)) {
-                if (!cacheOnly) {
-                    log.info("Item constants cache missing ids, refreshing from OpenDota");
-                    Map<String, ItemConstants> refreshed = client.getItemConstants();
-                    if (!refreshed.isEmpty()) {
-                        items = refreshed;
-                        cache.saveItemConstants(items);
-                    }
+            }
+        } else if (items.values().stream().allMatch(i -> i == null || i.getId() == null)) {
+            if (!cacheOnly) {
+                log.info("Item constants cache missing ids, refreshing from OpenDota");
+                Map<String, ItemConstants> refreshed = client.getItemConstants();
+                if (!refreshed.isEmpty()) {
+                    items = refreshed;
+                    cache.saveItemConstants(items);
                 }
-            } else if (items.values().stream().allMatch(i -> i == null || i.getComponents() == null)) {
-                if (!cacheOnly) {
-                    log.info("Item constants cache missing components, refreshing from OpenDota");
-                    Map<String, ItemConstants> refreshed = client.getItemConstants();
-                    if (!refreshed.isEmpty()) {
-                        items = refreshed;
-                        cache.saveItemConstants(items);
-                    }
+            }
+        } else if (items.values().stream().allMatch(i -> i == null || i.getComponents() == null)) {
+            if (!cacheOnly) {
+                log.info("Item constants cache missing components, refreshing from OpenDota");
+                Map<String, ItemConstants> refreshed = client.getItemConstants();
+                if (!refreshed.isEmpty()) {
+                    items = refreshed;
+                    cache.saveItemConstants(items);
                 }
             }
+        }
 
-            this.itemConstants = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-            this.itemConstants.putAll(items);
+        // A failed read (MySQL down, OpenDota throttled) must not wipe out data we already serve
+        Snapshot current = snapshot;
+        boolean complete = !heroes.isEmpty() && !stats.isEmpty() && !items.isEmpty();
+        if (heroes.isEmpty()) heroes = current.heroes;
+        if (stats.isEmpty()) stats = current.stats;
+        if (items.isEmpty()) items = current.items;
 
-            this.itemIdToKey = new HashMap<>();
-            for (Map.Entry<String, ItemConstants> entry : this.itemConstants.entrySet()) {
-                if (entry.getValue() != null && entry.getValue().getId() != null
-                        && entry.getValue().getId() > 0 && entry.getKey() != null && !entry.getKey().isBlank()) {
-                    this.itemIdToKey.putIfAbsent(entry.getValue().getId(), entry.getKey());
-                }
-            }
+        Snapshot built = Snapshot.build(heroes, stats, items);
+        snapshot = built;
+        loaded = true;
+        log.info("Hero data loaded. Heroes={} Stats={} Items={}", built.heroCount(), built.winRateCount(), built.itemsByKey.size());
+        if (complete) {
+            writeSnapshotFile(built);
+        }
+    }
 
+    private boolean warmStart() {
+        SnapshotFile file = readSnapshotFile();
+        if (file == null || file.heroes() == null || file.heroes().isEmpty()) return false;
+        gate.lock();
+        try {
+            if (loaded) return false;
+            snapshot = Snapshot.build(file.heroes(),
+                    file.heroStats() != null ? file.heroStats() : List.of(),
+                    file.items() != null ? file.items() : Map.of());
             loaded = true;
-            log.info("Hero data loaded. Heroes={} Stats={} Items={}", heroNames.size(), heroWinRates.size(), this.itemConstants.size());
+            return true;
         } finally {
             gate.unlock();
         }
     }
 
+    private SnapshotFile readSnapshotFile() {
+        if (snapshotFile != null && Files.isRegularFile(snapshotFile)) {
+            try (InputStream in = Files.newInputStream(snapshotFile)) {
+                return snapshotMapper.readValue(in, SnapshotFile.class);
+            } catch (IOException e) {
+                log.warn("Failed to read hero data snapshot {}", snapshotFile, e);
+            }
+        }
+        try (InputStream in = HeroDataCache.class.getResourceAsStream(BUNDLED_SNAPSHOT)) {
+            if (in != null) {
+                return snapshotMapper.readValue(in, SnapshotFile.class);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read bundled hero data snapshot", e);
+        }
+        return null;
+    }
+
+    private void writeSnapshotFile(Snapshot snap) {
+        if (snapshotFile == null) return;
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            // Both services may share the directory, so write aside and move into place
+            Path tmp = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), "hero-data", ".tmp");
+            try {
+                snapshotMapper.writeValue(tmp.toFile(), new SnapshotFile(snap.heroes, snap.stats, snap.items));
+                Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write hero data snapshot {}", snapshotFile, e);
+        }
+    }
+
     public String getHeroName(int heroId) {
-        String name = heroNames.get(heroId);
+        String[] names = snapshot.heroNames;
+        String name = heroId >= 0 && heroId < names.length ? names[heroId] : null;
         return name != null ? name : "英雄" + heroId;
     }
 
     public String getHeroKey(int heroId) {
-        String key = heroKeys.get(heroId);
+        String[] keys = snapshot.heroKeys;
+        String key = heroId >= 0 && heroId < keys.length ? keys[heroId] : null;
         return (key != null && !key.isBlank()) ? key : "";
     }
 
     public boolean tryGetWinRate(int heroId, double[] out) {
-        Double rate = heroWinRates.get(heroId);
-        if (rate != null) {
-            out[0] = rate;
+        double[] rates = snapshot.heroWinRates;
+        if (heroId >= 0 && heroId < rates.length && !Double.isNaN(rates[heroId])) {
+            out[0] = rates[heroId];
             return true;
         }
         return false;
     }
 
     public ItemConstants getItemConstants(String key) {
-        return itemConstants.get(key);
+        if (key == null) return null;
+        return snapshot.itemsByKey.get(normalize(key));
     }
 
     public boolean tryGetItemKeyById(int itemId, String[] out) {
@@ -169,7 +374,8 @@ public class HeroDataCache {
             out[0] = "";
             return false;
         }
-        String resolved = itemIdToKey.get(itemId);
+        String[] keys = snapshot.itemKeysById;
+        String resolved = itemId < keys.length ? keys[itemId] : null;
         if (resolved != null && !resolved.isBlank()) {
             out[0] = resolved;
             return true;
@@ -177,4 +383,9 @@ public class HeroDataCache {
         out[0] = "";
         return false;
     }
+
+    // toLowerCase returns the same instance when the key is already lower case, which item keys normally are
+    private static String normalize(String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
 }
@@ -9,6 +9,7 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.*;
 import java.time.Duration;
 import java.time.OffsetDateTime;
@@ -18,12 +19,42 @@ import java.util.*;
 public class MatchCache {
 
     private static final Logger log = LoggerFactory.getLogger(MatchCache.class);
+    private static final long DEFAULT_MEMORY_MAX_WEIGHT = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_MEMORY_TTL = Duration.ofMinutes(10);
+    private static final int BATCH_CHUNK_SIZE = 100;
+
     private final ObjectMapper objectMapper;
     private final HikariDataSource dataSource;
     private final Set<Long> permanentAccounts;
+    private final MemoryCache memory;
+    private final StorageCodec codec = new StorageCodec();
     private volatile boolean initialized;
 
+    private record CacheRow(String json, OffsetDateTime updatedAt) {}
+
+    private static final TypeReference<List<RecentMatch>> RECENT_MATCHES = new TypeReference<>() {};
+
+    /** Newest match of an account that the sync has stored. */
+    public record SyncWatermark(long matchId, int startTime) {
+
+        /** True if {@code match} started after this watermark (ties broken by match id). */
+        public boolean isBefore(RecentMatch match) {
+            return match.getStartTime() > startTime
+                    || (match.getStartTime() == startTime && match.getMatchId() > matchId);
+        }
+    }
+
     public MatchCache(String jdbcUrl, String user, String password, Set<Long> permanentAccounts) {
+        this(jdbcUrl, user, password, permanentAccounts, new MemoryCache(DEFAULT_MEMORY_MAX_WEIGHT, DEFAULT_MEMORY_TTL));
+    }
+
+    /**
+     * @param memory in-process tier consulted before MySQL. It holds each row's Smile encoding, weighed by its
+     *               length, and every hit decodes a fresh object, so callers may modify what they get back
+     *               just as with a database read
+     */
+    public MatchCache(String jdbcUrl, String user, String password, Set<Long> permanentAccounts, MemoryCache memory) {
+        this.memory = memory;
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         this.permanentAccounts = permanentAccounts != null ? permanentAccounts : Set.of();
@@ -37,15 +68,26 @@ public class MatchCache {
         this.dataSource = new HikariDataSource(config);
     }
 
+    public int getMaxPoolSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+
     public boolean isPermanentAccount(long accountId) {
         return permanentAccounts.contains(accountId);
     }
 
+    public Map<String, Object> getMemoryStats() {
+        return memory.getStats();
+    }
+
     public MatchDetail getMatchDetail(long matchId, Duration maxAge) {
+        MatchDetail memoized = memoized("match:" + matchId, maxAge, MatchDetail.class);
+        if (memoized != null) return memoized;
+
         ensureInitialized();
         try (Connection conn = dataSource.getConnection()) {
             PreparedStatement stmt = conn.prepareStatement(
-                    "SELECT json_data, updated_at FROM match_cache WHERE match_id = ?");
+                    "SELECT json_data, blob_data, updated_at FROM match_cache WHERE match_id = ?");
             stmt.setLong(1, matchId);
             ResultSet rs = stmt.executeQuery();
             if (!rs.next()) {
@@ -53,47 +95,210 @@ public class MatchCache {
                 return null;
             }
             String json = rs.getString(1);
-            String updatedAtStr = rs.getString(2);
+            byte[] blob = rs.getBytes(2);
+            String updatedAtStr = rs.getString(3);
             if (maxAge != null && isExpired(updatedAtStr, maxAge)) {
                 log.debug("Match cache expired: {}", matchId);
                 return null;
             }
             log.debug("Match cache hit: {}", matchId);
-            return objectMapper.readValue(json, MatchDetail.class);
+            return decodeMatchRow(matchId, json, blob, updatedAtStr);
         } catch (Exception e) {
             log.warn("Failed to get match detail from cache", e);
             return null;
         }
     }
 
+    /**
+     * Multi-get for match details. Memory hits are served first; the rest are read with
+     * {@code WHERE match_id IN (...)} in chunks over a single connection.
+     * Missing, expired or unreadable rows are simply absent from the returned map.
+     */
+    public Map<Long, MatchDetail> getMatchDetails(Collection<Long> matchIds, Duration maxAge) {
+        Map<Long, MatchDetail> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long matchId : new LinkedHashSet<>(matchIds)) {
+            MatchDetail memoized = memoized("match:" + matchId, maxAge, MatchDetail.class);
+            if (memoized != null) {
+                found.put(matchId, memoized);
+            } else {
+                missing.add(matchId);
+            }
+        }
+        if (missing.isEmpty()) return found;
+
+        ensureInitialized();
+        try (Connection conn = dataSource.getConnection()) {
+            for (int start = 0; start < missing.size(); start += BATCH_CHUNK_SIZE) {
+                List<Long> chunk = missing.subList(start, Math.min(start + BATCH_CHUNK_SIZE, missing.size()));
+                PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT match_id, json_data, blob_data, updated_at FROM match_cache WHERE match_id IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setLong(i + 1, chunk.get(i));
+                }
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    long matchId = rs.getLong(1);
+                    String updatedAtStr = rs.getString(4);
+                    if (maxAge != null && isExpired(updatedAtStr, maxAge)) continue;
+                    try {
+                        found.put(matchId, decodeMatchRow(matchId, rs.getString(2), rs.getBytes(3), updatedAtStr));
+                    } catch (Exception e) {
+                        log.warn("Failed to decode cached match {}", matchId, e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to get match details from cache", e);
+        }
+        log.debug("Match cache multi-get: {} requested, {} found", matchIds.size(), found.size());
+        return found;
+    }
+
+    private MatchDetail decodeMatchRow(long matchId, String json, byte[] blob, String updatedAtStr) throws IOException {
+        byte[] smile;
+        if (blob != null) {
+            smile = codec.decompress(blob);
+        } else {
+            // Legacy row written before the binary format
+            smile = codec.toSmile(objectMapper.readValue(json, MatchDetail.class));
+        }
+        memoize("match:" + matchId, smile, parseTimestamp(updatedAtStr));
+        return codec.fromSmile(smile, MatchDetail.class);
+    }
+
     public void saveMatchDetail(long matchId, MatchDetail detail) {
         ensureInitialized();
         try (Connection conn = dataSource.getConnection()) {
-            String json = objectMapper.writeValueAsString(detail);
-            String now = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            byte[] smile = codec.toSmile(detail);
+            byte[] blob = codec.compress(smile);
+            OffsetDateTime updatedAt = OffsetDateTime.now();
+            String now = updatedAt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
             PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO match_cache(match_id, json_data, updated_at) VALUES (?, ?, ?) " +
-                    "ON DUPLICATE KEY UPDATE json_data = VALUES(json_data), updated_at = VALUES(updated_at)");
+                    "INSERT INTO match_cache(match_id, json_data, blob_data, updated_at) VALUES (?, NULL, ?, ?) AS new " +
+                    "ON DUPLICATE KEY UPDATE json_data = NULL, blob_data = new.blob_data, updated_at = new.updated_at");
             stmt.setLong(1, matchId);
-            stmt.setString(2, json);
+            stmt.setBytes(2, blob);
             stmt.setString(3, now);
             stmt.executeUpdate();
-            log.debug("Match cache saved: {}", matchId);
+            memoize("match:" + matchId, smile, updatedAt);
+            log.debug("Match cache saved: {} ({} bytes)", matchId, blob.length);
         } catch (Exception e) {
             log.warn("Failed to save match detail to cache", e);
         }
     }
 
+    /**
+     * Batch upsert of match details using multi-row INSERT ... ON DUPLICATE KEY UPDATE statements.
+     */
+    public void saveMatchDetails(Map<Long, MatchDetail> details) {
+        if (details.isEmpty()) return;
+        ensureInitialized();
+
+        OffsetDateTime updatedAt = OffsetDateTime.now();
+        String now = updatedAt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        List<Map.Entry<Long, MatchDetail>> entries = new ArrayList<>(details.entrySet());
+        try (Connection conn = dataSource.getConnection()) {
+            for (int start = 0; start < entries.size(); start += BATCH_CHUNK_SIZE) {
+                List<Map.Entry<Long, MatchDetail>> chunk = entries.subList(start, Math.min(start + BATCH_CHUNK_SIZE, entries.size()));
+                List<Long> ids = new ArrayList<>(chunk.size());
+                List<byte[]> smiles = new ArrayList<>(chunk.size());
+                List<byte[]> blobs = new ArrayList<>(chunk.size());
+                for (Map.Entry<Long, MatchDetail> entry : chunk) {
+                    try {
+                        byte[] smile = codec.toSmile(entry.getValue());
+                        blobs.add(codec.compress(smile));
+                        smiles.add(smile);
+                        ids.add(entry.getKey());
+                    } catch (Exception e) {
+                        log.warn("Failed to encode match detail {}", entry.getKey(), e);
+                    }
+                }
+                if (ids.isEmpty()) continue;
+
+                PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO match_cache(match_id, json_data, blob_data, updated_at) VALUES "
+                        + String.join(",", Collections.nCopies(ids.size(), "(?, NULL, ?, ?)"))
+                        // Row alias instead of VALUES(), which is deprecated since MySQL 8.0.20
+                        + " AS new ON DUPLICATE KEY UPDATE json_data = NULL, blob_data = new.blob_data, updated_at = new.updated_at");
+                for (int i = 0; i < ids.size(); i++) {
+                    stmt.setLong(i * 3 + 1, ids.get(i));
+                    stmt.setBytes(i * 3 + 2, blobs.get(i));
+                    stmt.setString(i * 3 + 3, now);
+                }
+                stmt.executeUpdate();
+                for (int i = 0; i < ids.size(); i++) {
+                    memoize("match:" + ids.get(i), smiles.get(i), updatedAt);
+                }
+            }
+            log.debug("Match cache batch saved: {}", details.size());
+        } catch (Exception e) {
+            log.warn("Failed to batch save match details to cache", e);
+        }
+    }
+
+    /**
+     * Re-encode one batch of legacy JSON match rows into the binary format, walking match ids upward
+     * from {@code afterMatchId}. The row's updated_at is preserved.
+     * Returns the last match id visited, or -1 once no legacy rows remain. On database errors the
+     * cursor is returned unchanged so the caller retries later.
+     */
+    public long migrateLegacyMatchRows(long afterMatchId, int batchSize) {
+        ensureInitialized();
+        try (Connection conn = dataSource.getConnection()) {
+            PreparedStatement select = conn.prepareStatement(
+                    "SELECT match_id, json_data FROM match_cache WHERE blob_data IS NULL AND match_id > ? " +
+                    "ORDER BY match_id LIMIT ?");
+            select.setLong(1, afterMatchId);
+            select.setInt(2, batchSize);
+            ResultSet rs = select.executeQuery();
+
+            PreparedStatement update = conn.prepareStatement(
+                    "UPDATE match_cache SET blob_data = ?, json_data = NULL WHERE match_id = ? AND blob_data IS NULL");
+            long lastId = -1;
+            int pending = 0;
+            while (rs.next()) {
+                lastId = rs.getLong(1);
+                String json = rs.getString(2);
+                try {
+                    MatchDetail detail = objectMapper.readValue(json, MatchDetail.class);
+                    update.setBytes(1, codec.encode(detail));
+                    update.setLong(2, lastId);
+                    update.addBatch();
+                    pending++;
+                } catch (Exception e) {
+                    log.warn("Skipping unreadable legacy match row {}", lastId, e);
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+            return lastId;
+        } catch (Exception e) {
+            log.warn("Failed to migrate legacy match rows", e);
+            return afterMatchId;
+        }
+    }
+
     public List<RecentMatch> getRecentMatches(long accountId, Duration maxAge) {
         Duration effectiveMaxAge = isPermanentAccount(accountId) ? null : maxAge;
-        String json = getCacheRow("recent_matches_cache", "account_id", accountId, effectiveMaxAge);
-        if (json == null) {
+        List<RecentMatch> memoized = memoized("recent:" + accountId, effectiveMaxAge, RECENT_MATCHES);
+        if (memoized != null) return memoized;
+
+        CacheRow row = getCacheRow("recent_matches_cache", "account_id", accountId, effectiveMaxAge);
+        if (row == null) {
             log.debug("Recent matches cache miss: {}", accountId);
             return null;
         }
         log.debug("Recent matches cache hit: {}", accountId);
         try {
-            return objectMapper.readValue(json, new TypeReference<>() {});
+            List<RecentMatch> matches = objectMapper.readValue(row.json(), RECENT_MATCHES);
+            // An append by the sync can race a full rewrite that already had the same matches
+            Set<Long> seen = new HashSet<>();
+            matches.removeIf(m -> !seen.add(m.getMatchId()));
+            memoize("recent:" + accountId, matches, row.updatedAt());
+            return matches;
         } catch (Exception e) {
             log.warn("Failed to parse recent matches from cache", e);
             return null;
@@ -101,15 +306,87 @@ public class MatchCache {
     }
 
     public void saveRecentMatches(long accountId, List<RecentMatch> matches) {
-        saveCacheRow("recent_matches_cache", "account_id", accountId, matches);
+        long written = saveCacheRow("recent_matches_cache", "account_id", accountId, matches);
+        if (written >= 0) {
+            memoize("recent:" + accountId, matches, OffsetDateTime.now());
+        } else {
+            memory.invalidate("recent:" + accountId);
+        }
         log.debug("Recent matches cache saved: {} ({})", accountId, matches.size());
     }
 
+    /**
+     * Prepend {@code newest} (newest first, all newer than anything stored) to the account's cached match
+     * list. The merge happens in MySQL, so only the new rows are serialized and sent instead of reading
+     * and rewriting the whole list. Returns false if the row could not be written.
+     */
+    public boolean appendRecentMatches(long accountId, List<RecentMatch> newest) {
+        if (newest.isEmpty()) return true;
+        ensureInitialized();
+        try (Connection conn = dataSource.getConnection()) {
+            String json = objectMapper.writeValueAsString(newest);
+            String now = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            // The new values are bound again in the update clause; VALUES() there is deprecated since MySQL 8.0.20
+            PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO recent_matches_cache(account_id, json_data, updated_at) VALUES (?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE json_data = JSON_MERGE_PRESERVE(?, json_data), updated_at = ?");
+            stmt.setLong(1, accountId);
+            stmt.setString(2, json);
+            stmt.setString(3, now);
+            stmt.setString(4, json);
+            stmt.setString(5, now);
+            stmt.executeUpdate();
+            log.debug("Recent matches cache appended: {} (+{})", accountId, newest.size());
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to append recent matches for {}", accountId, e);
+            return false;
+        } finally {
+            // The memoized list is now behind the stored one
+            memory.invalidate("recent:" + accountId);
+        }
+    }
+
+    public Map<Long, SyncWatermark> getSyncWatermarks() {
+        ensureInitialized();
+        Map<Long, SyncWatermark> watermarks = new HashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            ResultSet rs = conn.createStatement().executeQuery(
+                    "SELECT account_id, last_match_id, last_start_time FROM sync_watermark");
+            while (rs.next()) {
+                watermarks.put(rs.getLong(1), new SyncWatermark(rs.getLong(2), rs.getInt(3)));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load sync watermarks", e);
+        }
+        return watermarks;
+    }
+
+    public void saveSyncWatermark(long accountId, SyncWatermark watermark) {
+        ensureInitialized();
+        try (Connection conn = dataSource.getConnection()) {
+            String now = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO sync_watermark(account_id, last_match_id, last_start_time, updated_at) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE last_match_id = ?, last_start_time = ?, updated_at = ?");
+            stmt.setLong(1, accountId);
+            stmt.setLong(2, watermark.matchId());
+            stmt.setInt(3, watermark.startTime());
+            stmt.setString(4, now);
+            stmt.setLong(5, watermark.matchId());
+            stmt.setInt(6, watermark.startTime());
+            stmt.setString(7, now);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.warn("Failed to save sync watermark for {}", accountId, e);
+        }
+    }
+
     public List<Hero> getHeroes(Duration maxAge) {
-        String json = getCacheRow("hero_cache", "cache_key", "heroes", maxAge);
-        if (json == null) return null;
+        CacheRow row = getCacheRow("hero_cache", "cache_key", "heroes", maxAge);
+        if (row == null) return null;
         try {
-            return objectMapper.readValue(json, new TypeReference<>() {});
+            return objectMapper.readValue(row.json(), new TypeReference<>() {});
         } catch (Exception e) {
             log.warn("Failed to parse heroes from cache", e);
             return null;
@@ -121,10 +398,10 @@ public class MatchCache {
     }
 
     public List<HeroStats> getHeroStats(Duration maxAge) {
-        String json = getCacheRow("hero_cache", "cache_key", "hero_stats", maxAge);
-        if (json == null) return null;
+        CacheRow row = getCacheRow("hero_cache", "cache_key", "hero_stats", maxAge);
+        if (row == null) return null;
         try {
-            return objectMapper.readValue(json, new TypeReference<>() {});
+            return objectMapper.readValue(row.json(), new TypeReference<>() {});
         } catch (Exception e) {
             log.warn("Failed to parse hero stats from cache", e);
             return null;
@@ -136,10 +413,10 @@ public class MatchCache {
     }
 
     public Map<String, ItemConstants> getItemConstants(Duration maxAge) {
-        String json = getCacheRow("hero_cache", "cache_key", "item_constants", maxAge);
-        if (json == null) return null;
+        CacheRow row = getCacheRow("hero_cache", "cache_key", "item_constants", maxAge);
+        if (row == null) return null;
         try {
-            return objectMapper.readValue(json, new TypeReference<>() {});
+            return objectMapper.readValue(row.json(), new TypeReference<>() {});
         } catch (Exception e) {
             log.warn("Failed to parse item constants from cache", e);
             return null;
@@ -151,10 +428,15 @@ public class MatchCache {
     }
 
     public BenchmarksResponse getBenchmark(int heroId, Duration maxAge) {
-        String json = getCacheRow("benchmark_cache", "hero_id", (long) heroId, maxAge);
-        if (json == null) return null;
+        BenchmarksResponse memoized = memoized("benchmark:" + heroId, maxAge, BenchmarksResponse.class);
+        if (memoized != null) return memoized;
+
+        CacheRow row = getCacheRow("benchmark_cache", "hero_id", (long) heroId, maxAge);
+        if (row == null) return null;
         try {
-            return objectMapper.readValue(json, BenchmarksResponse.class);
+            BenchmarksResponse benchmark = objectMapper.readValue(row.json(), BenchmarksResponse.class);
+            memoize("benchmark:" + heroId, benchmark, row.updatedAt());
+            return benchmark;
         } catch (Exception e) {
             log.warn("Failed to parse benchmark from cache for hero {}", heroId, e);
             return null;
@@ -162,7 +444,46 @@ public class MatchCache {
     }
 
     public void saveBenchmark(int heroId, BenchmarksResponse benchmark) {
-        saveCacheRow("benchmark_cache", "hero_id", (long) heroId, benchmark);
+        long written = saveCacheRow("benchmark_cache", "hero_id", (long) heroId, benchmark);
+        if (written >= 0) {
+            memoize("benchmark:" + heroId, benchmark, OffsetDateTime.now());
+        } else {
+            memory.invalidate("benchmark:" + heroId);
+        }
+    }
+
+    private <T> T memoized(String key, Duration maxAge, Class<T> type) {
+        byte[] smile = memory.get(key, maxAge, byte[].class);
+        if (smile == null) return null;
+        try {
+            return codec.fromSmile(smile, type);
+        } catch (IOException e) {
+            memory.invalidate(key);
+            return null;
+        }
+    }
+
+    private <T> T memoized(String key, Duration maxAge, TypeReference<T> type) {
+        byte[] smile = memory.get(key, maxAge, byte[].class);
+        if (smile == null) return null;
+        try {
+            return codec.fromSmile(smile, type);
+        } catch (IOException e) {
+            memory.invalidate(key);
+            return null;
+        }
+    }
+
+    private void memoize(String key, Object value, OffsetDateTime updatedAt) {
+        try {
+            memoize(key, codec.toSmile(value), updatedAt);
+        } catch (IOException e) {
+            memory.invalidate(key);
+        }
+    }
+
+    private void memoize(String key, byte[] smile, OffsetDateTime updatedAt) {
+        memory.put(key, smile, updatedAt, smile.length);
     }
 
     private void ensureInitialized() {
@@ -173,7 +494,9 @@ public class MatchCache {
                 Statement stmt = conn.createStatement();
                 stmt.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS match_cache (" +
-                    "match_id BIGINT PRIMARY KEY, json_data LONGTEXT NOT NULL, updated_at VARCHAR(64) NOT NULL)");
+                    "match_id BIGINT PRIMARY KEY, json_data LONGTEXT NULL, blob_data LONGBLOB NULL, " +
+                    "updated_at VARCHAR(64) NOT NULL)");
+                upgradeMatchCacheSchema(conn);
                 stmt.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS recent_matches_cache (" +
                     "account_id BIGINT PRIMARY KEY, json_data LONGTEXT NOT NULL, updated_at VARCHAR(64) NOT NULL)");
@@ -183,6 +506,10 @@ public class MatchCache {
                 stmt.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS benchmark_cache (" +
                     "hero_id INT PRIMARY KEY, json_data LONGTEXT NOT NULL, updated_at VARCHAR(64) NOT NULL)");
+                stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS sync_watermark (" +
+                    "account_id BIGINT PRIMARY KEY, last_match_id BIGINT NOT NULL, last_start_time INT NOT NULL, " +
+                    "updated_at VARCHAR(64) NOT NULL)");
                 initialized = true;
                 log.info("MySQL cache tables initialized");
             } catch (Exception e) {
@@ -191,7 +518,17 @@ public class MatchCache {
         }
     }
 
-    private String getCacheRow(String table, String keyColumn, Object key, Duration maxAge) {
+    private void upgradeMatchCacheSchema(Connection conn) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, "match_cache", "blob_data")) {
+            if (columns.next()) return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE match_cache MODIFY json_data LONGTEXT NULL, ADD COLUMN blob_data LONGBLOB NULL");
+        }
+        log.info("match_cache upgraded with blob_data column");
+    }
+
+    private CacheRow getCacheRow(String table, String keyColumn, Object key, Duration maxAge) {
         ensureInitialized();
         try (Connection conn = dataSource.getConnection()) {
             PreparedStatement stmt = conn.prepareStatement(
@@ -206,14 +543,17 @@ public class MatchCache {
             String json = rs.getString(1);
             String updatedAtStr = rs.getString(2);
             if (maxAge != null && isExpired(updatedAtStr, maxAge)) return null;
-            return json;
+            return new CacheRow(json, parseTimestamp(updatedAtStr));
         } catch (Exception e) {
             log.warn("Failed to get cache row from {}", table, e);
             return null;
         }
     }
 
-    private void saveCacheRow(String table, String keyColumn, Object key, Object payload) {
+    /**
+     * @return length of the stored JSON, or -1 if the row could not be written
+     */
+    private long saveCacheRow(String table, String keyColumn, Object key, Object payload) {
         ensureInitialized();
         try (Connection conn = dataSource.getConnection()) {
             String json = objectMapper.writeValueAsString(payload);
@@ -229,8 +569,18 @@ public class MatchCache {
             stmt.setString(2, json);
             stmt.setString(3, now);
             stmt.executeUpdate();
+            return json.length();
         } catch (Exception e) {
             log.warn("Failed to save cache row to {}", table, e);
+            return -1;
+        }
+    }
+
+    private OffsetDateTime parseTimestamp(String updatedAtStr) {
+        try {
+            return OffsetDateTime.parse(updatedAtStr);
+        } catch (Exception e) {
+            return OffsetDateTime.MIN;
         }
     }
 
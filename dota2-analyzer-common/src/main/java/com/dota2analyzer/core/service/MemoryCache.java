@@ -0,0 +1,118 @@
+package com.dota2analyzer.core.service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * On-heap LRU cache of rows, bounded by total weight. Values are handed out as stored, so whatever goes in
+ * should not be modified by readers; {@link MatchCache} stores encoded bytes and decodes a copy per read.
+ * Each entry remembers the {@code updated_at} of its source row so callers can apply the same
+ * {@code maxAge} check as the database tier; entries also expire after {@code ttl} in memory so
+ * rows rewritten by the other service are picked up again.
+ */
+public class MemoryCache {
+
+    private final long maxWeight;
+    private final Duration ttl;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private record Entry(Object value, OffsetDateTime updatedAt, long loadedAtMs, long weight) {}
+
+    public MemoryCache(long maxWeight, Duration ttl) {
+        this.maxWeight = maxWeight;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cached value, or null if absent, expired in memory, or older than {@code maxAge}.
+     * A null {@code maxAge} accepts any row age (permanent-account semantics).
+     */
+    public <T> T get(String key, Duration maxAge, Class<T> type) {
+        if (maxWeight <= 0) return null;
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAtMs > ttl.toMillis()) {
+                entries.remove(key);
+                totalWeight -= entry.weight;
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null || !type.isInstance(entry.value)
+                || (maxAge != null && entry.updatedAt.plus(maxAge).isBefore(OffsetDateTime.now()))) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return type.cast(entry.value);
+    }
+
+    public void put(String key, Object value, OffsetDateTime updatedAt, long weight) {
+        if (maxWeight <= 0 || value == null || weight > maxWeight) return;
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, new Entry(value, updatedAt, System.currentTimeMillis(), weight));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (totalWeight > maxWeight && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                totalWeight -= eldest.weight;
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                totalWeight -= removed.weight;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int size;
+        long weight;
+        lock.lock();
+        try {
+            size = entries.size();
+            weight = totalWeight;
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size);
+        stats.put("weight", weight);
+        stats.put("maxWeight", maxWeight);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+}
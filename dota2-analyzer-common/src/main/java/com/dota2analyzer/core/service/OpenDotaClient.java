@@ -1,166 +1,308 @@
 package com.dota2analyzer.core.service;
 
 import com.dota2analyzer.core.model.opendota.*;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClient;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 public class OpenDotaClient implements DotaDataProvider {
 
     private static final Logger log = LoggerFactory.getLogger(OpenDotaClient.class);
+    private static final String DEFAULT_BASE_URL = "https://api.opendota.com/api/";
     private static final long MIN_INTERVAL_MS = 1100;
     private static final int MAX_RETRIES = 3;
 
     private final RestClient restClient;
-    private final ObjectMapper objectMapper;
-    private final ReentrantLock rateLock = new ReentrantLock();
-    private volatile long lastRequestTimeMs;
+    private volatile ObjectMapper objectMapper;
+    private final RequestScheduler scheduler;
+    private final AdaptiveRateLimiter rateLimiter;
+
+    // Single-flight: concurrent callers for the same endpoint and arguments share one upstream call
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    private final class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        volatile RequestPriority priority;
+        volatile CompletableFuture<?> pending;
+
+        Flight(RequestPriority priority) {
+            this.priority = priority;
+        }
+
+        synchronized void raise(RequestPriority requested) {
+            if (requested.ordinal() >= priority.ordinal()) return;
+            priority = requested;
+            CompletableFuture<?> queued = pending;
+            if (queued != null && scheduler.promote(queued, requested)) {
+                log.debug("Promoted queued OpenDota call to {}", requested);
+            }
+        }
+    }
 
     public OpenDotaClient(RestClient.Builder restClientBuilder) {
+        this(restClientBuilder, DEFAULT_BASE_URL, new RequestScheduler(1000.0 / MIN_INTERVAL_MS, 2, 1), null);
+    }
+
+    /**
+     * @param rateLimiter adjusts {@code scheduler}'s rate from upstream feedback; when null a default
+     *                    limiter between 0.2 request/s and the 1100 ms spacing is used
+     */
+    public OpenDotaClient(RestClient.Builder restClientBuilder, String baseUrl, RequestScheduler scheduler,
+                          AdaptiveRateLimiter rateLimiter) {
         this.restClient = restClientBuilder
-                .baseUrl("https://api.opendota.com/api/")
+                .baseUrl(baseUrl != null ? baseUrl : DEFAULT_BASE_URL)
                 .build();
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.scheduler = scheduler;
+        this.rateLimiter = rateLimiter != null ? rateLimiter : new AdaptiveRateLimiter(scheduler, 0.2, 1000.0 / MIN_INTERVAL_MS, 0.02);
     }
 
     public List<Hero> getHeroes() {
-        String json = fetchWithRetry(() ->
-                restClient.get().uri("heroes").retrieve().body(String.class));
-        return parseList(json, new TypeReference<>() {});
+        return listOrEmpty(call(null, RequestPriority.INTERACTIVE,
+                () -> restClient.get().uri("heroes"),
+                new TypeReference<List<Hero>>() {}));
     }
 
     public List<HeroStats> getHeroStats() {
-        String json = fetchWithRetry(() ->
-                restClient.get().uri("heroStats").retrieve().body(String.class));
-        return parseList(json, new TypeReference<>() {});
+        return listOrEmpty(call(null, RequestPriority.INTERACTIVE,
+                () -> restClient.get().uri("heroStats"),
+                new TypeReference<List<HeroStats>>() {}));
     }
 
     public List<RecentMatch> getRecentMatches(long accountId, int limit) {
-        String json = fetchWithRetry(() ->
-                restClient.get()
-                        .uri("players/{accountId}/recentMatches?limit={limit}&lobby_type=7", accountId, limit)
-                        .retrieve().body(String.class));
-        return parseList(json, new TypeReference<>() {});
+        return listOrEmpty(call(null, RequestPriority.INTERACTIVE,
+                () -> restClient.get()
+                        .uri("players/{accountId}/recentMatches?limit={limit}&lobby_type=7", accountId, limit),
+                new TypeReference<List<RecentMatch>>() {}));
     }
 
     public List<RecentMatch> getPlayerMatches(long accountId, int limit, int offset, int lobbyType) {
-        String json = fetchWithRetry(() ->
-                restClient.get()
+        return getPlayerMatches(accountId, limit, offset, lobbyType, RequestPriority.INTERACTIVE);
+    }
+
+    public List<RecentMatch> getPlayerMatches(long accountId, int limit, int offset, int lobbyType,
+                                              RequestPriority priority) {
+        return listOrEmpty(call(null, priority,
+                () -> restClient.get()
                         .uri("players/{accountId}/matches?limit={limit}&offset={offset}&lobby_type={lobbyType}",
-                                accountId, limit, offset, lobbyType)
-                        .retrieve().body(String.class));
-        return parseList(json, new TypeReference<>() {});
+                                accountId, limit, offset, lobbyType),
+                new TypeReference<List<RecentMatch>>() {}));
     }
 
     public MatchDetail getMatchDetail(long matchId) {
-        try {
-            String json = fetchWithRetry(() ->
-                    restClient.get()
-                            .uri("matches/{matchId}", matchId)
-                            .retrieve().body(String.class));
-            if (json == null) return null;
-            return objectMapper.readValue(json, MatchDetail.class);
-        } catch (Exception e) {
-            log.error("Failed to get match detail for {}", matchId, e);
-            return null;
-        }
+        return getMatchDetail(matchId, RequestPriority.INTERACTIVE);
+    }
+
+    public MatchDetail getMatchDetail(long matchId, RequestPriority priority) {
+        return join(getMatchDetailAsync(matchId, priority));
+    }
+
+    /**
+     * Non-blocking variant; completes with null if the match cannot be fetched or parsed.
+     */
+    public CompletableFuture<MatchDetail> getMatchDetailAsync(long matchId, RequestPriority priority) {
+        return this.<MatchDetail>call("matches/" + matchId, priority,
+                        () -> restClient.get().uri("matches/{matchId}", matchId),
+                        new TypeReference<MatchDetail>() {})
+                .exceptionally(e -> {
+                    log.error("Failed to get match detail for {}", matchId, unwrap(e));
+                    return null;
+                });
     }
 
     public BenchmarksResponse getHeroBenchmarks(int heroId) {
-        try {
-            String json = fetchWithRetry(() ->
-                    restClient.get()
-                            .uri("benchmarks?hero_id={heroId}", heroId)
-                            .retrieve().body(String.class));
-            if (json == null) return null;
-            return objectMapper.readValue(json, BenchmarksResponse.class);
-        } catch (Exception e) {
-            log.error("Failed to get benchmarks for hero {}", heroId, e);
-            return null;
-        }
+        return join(this.<BenchmarksResponse>call("benchmarks/" + heroId, RequestPriority.INTERACTIVE,
+                        () -> restClient.get().uri("benchmarks?hero_id={heroId}", heroId),
+                        new TypeReference<BenchmarksResponse>() {})
+                .exceptionally(e -> {
+                    log.error("Failed to get benchmarks for hero {}", heroId, unwrap(e));
+                    return null;
+                }));
     }
 
     public Map<String, ItemConstants> getItemConstants() {
-        try {
-            String json = fetchWithRetry(() ->
-                    restClient.get().uri("constants/items").retrieve().body(String.class));
-            if (json == null) return new HashMap<>();
-            return objectMapper.readValue(json, new TypeReference<>() {});
-        } catch (Exception e) {
-            log.error("Failed to get item constants", e);
-            return new HashMap<>();
-        }
+        Map<String, ItemConstants> items = join(this.<Map<String, ItemConstants>>call(null, RequestPriority.INTERACTIVE,
+                        () -> restClient.get().uri("constants/items"),
+                        new TypeReference<Map<String, ItemConstants>>() {})
+                .exceptionally(e -> {
+                    log.error("Failed to get item constants", unwrap(e));
+                    return null;
+                }));
+        return items != null ? items : new HashMap<>();
     }
 
     public boolean requestParse(long matchId) {
-        try {
-            fetchWithRetry(() -> {
-                restClient.post().uri("request/{matchId}", matchId).retrieve().toBodilessEntity();
-                return "";
-            });
-            return true;
-        } catch (Exception e) {
-            log.warn("Failed to request parse for match {}", matchId, e);
-            return false;
-        }
+        return requestParse(matchId, RequestPriority.INTERACTIVE);
     }
 
-    private void throttle() {
-        rateLock.lock();
-        try {
-            long now = System.currentTimeMillis();
-            long elapsed = now - lastRequestTimeMs;
-            if (elapsed < MIN_INTERVAL_MS) {
-                long wait = MIN_INTERVAL_MS - elapsed;
-                log.debug("Rate limit: waiting {}ms", wait);
-                Thread.sleep(wait);
+    public boolean requestParse(long matchId, RequestPriority priority) {
+        return join(requestParseAsync(matchId, priority));
+    }
+
+    public CompletableFuture<Boolean> requestParseAsync(long matchId, RequestPriority priority) {
+        return this.<Object>call("request/" + matchId, priority,
+                        () -> restClient.post().uri("request/{matchId}", matchId),
+                        null)
+                .thenApply(ignored -> true)
+                .exceptionally(e -> {
+                    log.warn("Failed to request parse for match {}", matchId, unwrap(e));
+                    return false;
+                });
+    }
+
+    /**
+     * Skip the named JSON properties of {@code type} while deserializing responses. The parser steps over
+     * their subtrees without building values, so a consumer that never reads e.g. the per-minute
+     * {@code gold_t}/{@code xp_t} arrays can avoid allocating them. Only use this where the fetched objects
+     * are not written to {@link MatchCache}, since the skipped fields will be missing from the stored copy.
+     */
+    public synchronized void ignoreProperties(Class<?> type, String... names) {
+        // Deserializers are cached per mapper, so apply the override to a fresh copy and swap it in
+        ObjectMapper updated = objectMapper.copy();
+        updated.configOverride(type)
+                .setIgnorals(JsonIgnoreProperties.Value.forIgnoredProperties(names));
+        objectMapper = updated;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("upstreamCalls", upstreamCalls.sum());
+        stats.put("coalescedCalls", coalescedCalls.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("scheduler", scheduler.getStats());
+        stats.put("rateLimit", rateLimiter.getStats());
+        return stats;
+    }
+
+    /**
+     * Submit an upstream call through the scheduler, retrying 429s with backoff, and deserialize its body
+     * straight from the response stream ({@code type} null discards the body). Completes with null on an
+     * empty body. With a non-null {@code flightKey}, a concurrent call for the same key is shared instead
+     * (and promoted if this caller has a higher priority).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> call(String flightKey, RequestPriority priority,
+                                          Supplier<RestClient.RequestHeadersSpec<?>> request, TypeReference<T> type) {
+        Flight flight = new Flight(priority);
+        if (flightKey != null) {
+            Flight existing = inFlight.putIfAbsent(flightKey, flight);
+            if (existing != null) {
+                coalescedCalls.increment();
+                log.debug("Coalesced OpenDota call {}", flightKey);
+                existing.raise(priority);
+                return (CompletableFuture<T>) existing.result;
             }
-            lastRequestTimeMs = System.currentTimeMillis();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } finally {
-            rateLock.unlock();
         }
+
+        upstreamCalls.increment();
+        fetchWithRetry(flight, request, type, 0)
+                .whenComplete((value, error) -> {
+                    if (flightKey != null) {
+                        inFlight.remove(flightKey, flight);
+                    }
+                    if (error != null) {
+                        flight.result.completeExceptionally(unwrap(error));
+                    } else {
+                        flight.result.complete(value);
+                    }
+                });
+        return (CompletableFuture<T>) flight.result;
     }
 
-    private String fetchWithRetry(Supplier<String> request) {
-        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
-            throttle();
-            try {
-                return request.get();
-            } catch (HttpClientErrorException.TooManyRequests e) {
-                if (attempt == MAX_RETRIES) {
-                    log.error("OpenDota 429 after {} retries, giving up", MAX_RETRIES);
-                    throw e;
-                }
-                long backoff = (long) Math.pow(2, attempt + 1) * 1000;
-                log.warn("OpenDota 429, retry {}/{} after {}ms", attempt + 1, MAX_RETRIES, backoff);
-                try {
-                    Thread.sleep(backoff);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw e;
-                }
+    private CompletableFuture<Object> fetchWithRetry(Flight flight, Supplier<RestClient.RequestHeadersSpec<?>> request,
+                                                     TypeReference<?> type, int attempt) {
+        CompletableFuture<Object> scheduled = scheduler.submit(flight.priority,
+                () -> request.get().exchange((req, response) -> readResponse(response, type)));
+        flight.pending = scheduled;
+        return scheduled.exceptionallyCompose(error -> {
+            Throwable cause = unwrap(error);
+            if (!(cause instanceof HttpClientErrorException.TooManyRequests tooMany)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            long backoff = rateLimiter.onThrottled(tooMany.getResponseHeaders(), (long) Math.pow(2, attempt + 1) * 1000);
+            if (attempt == MAX_RETRIES) {
+                log.error("OpenDota 429 after {} retries, giving up", MAX_RETRIES);
+                return CompletableFuture.failedFuture(cause);
             }
+            log.warn("OpenDota 429, retry {}/{} after {}ms", attempt + 1, MAX_RETRIES, backoff);
+            return CompletableFuture
+                    .runAsync(() -> {}, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> fetchWithRetry(flight, request, type, attempt + 1));
+        });
+    }
+
+    private Object readResponse(ClientHttpResponse response, TypeReference<?> type) throws IOException {
+        HttpStatusCode status = response.getStatusCode();
+        if (status.isError()) {
+            byte[] body = response.getBody().readAllBytes();
+            String statusText = response.getStatusText();
+            if (status.is4xxClientError()) {
+                throw HttpClientErrorException.create(status, statusText, response.getHeaders(), body, null);
+            }
+            throw HttpServerErrorException.create(status, statusText, response.getHeaders(), body, null);
+        }
+        rateLimiter.onSuccess(response.getHeaders());
+
+        if (type == null) return null;
+        ObjectMapper mapper = objectMapper;
+        try (JsonParser parser = mapper.createParser(response.getBody())) {
+            if (parser.nextToken() == null) return null;
+            return mapper.readValue(parser, type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
         }
-        return null;
+        return error;
     }
 
-    private <T> List<T> parseList(String json, TypeReference<List<T>> typeRef) {
-        if (json == null) return new ArrayList<>();
+    /**
+     * Like {@link #join} for list endpoints: an empty or malformed body yields an empty list,
+     * transport errors still propagate.
+     */
+    private static <T> List<T> listOrEmpty(CompletableFuture<List<T>> future) {
         try {
-            return objectMapper.readValue(json, typeRef);
-        } catch (Exception e) {
-            log.error("Failed to parse JSON list", e);
+            List<T> list = join(future);
+            return list != null ? list : new ArrayList<>();
+        } catch (UncheckedIOException e) {
+            log.error("Failed to parse JSON list", e.getCause());
             return new ArrayList<>();
         }
     }
@@ -0,0 +1,13 @@
+package com.dota2analyzer.core.service;
+
+/**
+ * Scheduling class for upstream OpenDota calls, highest priority first.
+ */
+public enum RequestPriority {
+    /** A user is waiting on the response. */
+    INTERACTIVE,
+    /** Periodic sync of tracked accounts. */
+    SYNC,
+    /** Bulk preload; runs only on leftover budget. */
+    PRELOAD
+}
@@ -0,0 +1,222 @@
+package com.dota2analyzer.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Token-bucket scheduler for rate-limited upstream calls.
+ * Callers submit work with a {@link RequestPriority} and get a future back instead of blocking on a lock.
+ * A single dispatcher hands out tokens strictly by priority; background classes additionally leave
+ * {@code reservedForInteractive} tokens in the bucket so an arriving interactive call is dispatched at once.
+ * Each dispatched call runs on its own virtual thread.
+ */
+public class RequestScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private final int burst;
+    private final int reservedForInteractive;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final EnumMap<RequestPriority, ArrayDeque<Task<?>>> queues = new EnumMap<>(RequestPriority.class);
+    private final EnumMap<RequestPriority, LongAdder> dispatched = new EnumMap<>(RequestPriority.class);
+
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = System.nanoTime();
+
+    private static final class Task<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Supplier<T> work;
+
+        Task(Supplier<T> work) {
+            this.work = work;
+        }
+
+        void run() {
+            if (future.isDone()) return;
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    public RequestScheduler(double permitsPerSecond, int burst, int reservedForInteractive) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.reservedForInteractive = Math.max(0, Math.min(reservedForInteractive, this.burst - 1));
+        this.tokens = this.burst;
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            dispatched.put(priority, new LongAdder());
+        }
+        Thread.ofVirtual().name("opendota-dispatcher").start(this::dispatchLoop);
+    }
+
+    public <T> CompletableFuture<T> submit(RequestPriority priority, Supplier<T> work) {
+        Task<T> task = new Task<>(work);
+        lock.lock();
+        try {
+            queues.get(priority).addLast(task);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task.future;
+    }
+
+    /**
+     * Move a still-queued call to a higher priority class, e.g. when an interactive caller joins
+     * a request that was submitted by preload. Returns false if the call already started.
+     */
+    public boolean promote(CompletableFuture<?> future, RequestPriority priority) {
+        lock.lock();
+        try {
+            for (RequestPriority lower : RequestPriority.values()) {
+                if (lower.ordinal() <= priority.ordinal()) continue;
+                Iterator<Task<?>> it = queues.get(lower).iterator();
+                while (it.hasNext()) {
+                    Task<?> task = it.next();
+                    if (task.future == future) {
+                        it.remove();
+                        queues.get(priority).addLast(task);
+                        changed.signal();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getPermitsPerSecond() {
+        lock.lock();
+        try {
+            return permitsPerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setPermitsPerSecond(double permitsPerSecond) {
+        lock.lock();
+        try {
+            refill();
+            this.permitsPerSecond = permitsPerSecond;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hold all dispatching for {@code delayMs}, e.g. when upstream sent a Retry-After.
+     * The bucket is drained so calls resume at the steady rate rather than in a burst.
+     */
+    public void pause(long delayMs) {
+        lock.lock();
+        try {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            if (until - pausedUntilNanos > 0) {
+                pausedUntilNanos = until;
+            }
+            tokens = 0;
+            lastRefillNanos = pausedUntilNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            refill();
+            stats.put("permitsPerSecond", permitsPerSecond);
+            stats.put("tokens", tokens);
+            stats.put("pausedMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime())));
+            for (RequestPriority priority : RequestPriority.values()) {
+                String name = priority.name().toLowerCase();
+                stats.put(name + "Queued", queues.get(priority).size());
+                stats.put(name + "Dispatched", dispatched.get(priority).sum());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task<?> task;
+            lock.lock();
+            try {
+                task = awaitNext();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            Thread.startVirtualThread(task::run);
+        }
+    }
+
+    private Task<?> awaitNext() throws InterruptedException {
+        while (true) {
+            long pausedNanos = pausedUntilNanos - System.nanoTime();
+            if (pausedNanos > 0) {
+                changed.awaitNanos(pausedNanos);
+                continue;
+            }
+            refill();
+            RequestPriority next = null;
+            for (RequestPriority priority : RequestPriority.values()) {
+                if (!queues.get(priority).isEmpty()) {
+                    next = priority;
+                    break;
+                }
+            }
+            if (next == null) {
+                changed.await();
+                continue;
+            }
+
+            double needed = next == RequestPriority.INTERACTIVE ? 1 : 1 + reservedForInteractive;
+            if (tokens >= needed) {
+                tokens -= 1;
+                dispatched.get(next).increment();
+                return queues.get(next).pollFirst();
+            }
+
+            long waitNanos = (long) Math.ceil((needed - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+            log.debug("Rate limit: {} call waiting {}ms", next, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            // Wakes early when a higher-priority call arrives or the rate changes
+            changed.awaitNanos(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (now - lastRefillNanos <= 0) return;
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
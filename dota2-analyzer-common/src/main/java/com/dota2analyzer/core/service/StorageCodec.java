@@ -0,0 +1,109 @@
+package com.dota2analyzer.core.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Versioned binary encoding for cache blobs.
+ * Layout: 1 byte format version, 4 bytes uncompressed length, then the payload.
+ * Version 1 is Smile (binary JSON with back-referenced key names) compressed with Deflate.
+ * The two steps are also exposed separately for the memory tier, which keeps the uncompressed Smile.
+ */
+public class StorageCodec {
+
+    public static final byte VERSION_SMILE_DEFLATE = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private final ObjectMapper smileMapper;
+
+    public StorageCodec() {
+        this.smileMapper = new ObjectMapper(new SmileFactory())
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public byte[] encode(Object value) throws IOException {
+        return compress(toSmile(value));
+    }
+
+    public <T> T decode(byte[] data, Class<T> type) throws IOException {
+        return smileMapper.readValue(decompress(data), type);
+    }
+
+    public byte[] toSmile(Object value) throws IOException {
+        return smileMapper.writeValueAsBytes(value);
+    }
+
+    public <T> T fromSmile(byte[] smile, Class<T> type) throws IOException {
+        return smileMapper.readValue(smile, type);
+    }
+
+    public <T> T fromSmile(byte[] smile, TypeReference<T> type) throws IOException {
+        return smileMapper.readValue(smile, type);
+    }
+
+    /** Wraps Smile bytes from {@link #toSmile} into a versioned, compressed blob. */
+    public byte[] compress(byte[] smile) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(smile);
+            deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + smile.length + 64);
+            out.put(VERSION_SMILE_DEFLATE).putInt(smile.length);
+            while (!deflater.finished()) {
+                if (!out.hasRemaining()) {
+                    ByteBuffer grown = ByteBuffer.allocate(out.capacity() * 2);
+                    out.flip();
+                    grown.put(out);
+                    out = grown;
+                }
+                deflater.deflate(out);
+            }
+            byte[] encoded = new byte[out.position()];
+            out.flip().get(encoded);
+            return encoded;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** The Smile bytes inside a blob written by {@link #compress}. */
+    public byte[] decompress(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE) {
+            throw new IOException("Blob too short: " + data.length + " bytes");
+        }
+        byte version = data[0];
+        if (version != VERSION_SMILE_DEFLATE) {
+            throw new IOException("Unsupported blob version " + version);
+        }
+
+        byte[] smile = new byte[decodedLength(data)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            int read = inflater.inflate(smile);
+            if (read != smile.length || !inflater.finished()) {
+                throw new IOException("Blob truncated: expected " + smile.length + " bytes, got " + read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt blob", e);
+        } finally {
+            inflater.end();
+        }
+        return smile;
+    }
+
+    /**
+     * Size of the uncompressed payload, i.e. of {@link #decompress}'s result.
+     */
+    public static int decodedLength(byte[] data) {
+        return ByteBuffer.wrap(data, 1, 4).getInt();
+    }
+}
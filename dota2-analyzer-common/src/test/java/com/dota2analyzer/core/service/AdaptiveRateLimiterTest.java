@@ -0,0 +1,172 @@
+package com.dota2analyzer.core.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/** Drives {@link AdaptiveRateLimiter} through {@link OpenDotaClient} against a local stub of the OpenDota API. */
+class AdaptiveRateLimiterTest {
+
+    private HttpServer server;
+    private final List<Long> requestNanos = new CopyOnWriteArrayList<>();
+    // One response per request in order; once empty every request gets 200 with an empty list
+    private final ConcurrentLinkedQueue<Consumer<HttpExchange>> responses = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requestNanos.add(System.nanoTime());
+            Consumer<HttpExchange> response = responses.poll();
+            if (response != null) {
+                response.accept(exchange);
+            } else {
+                respond(exchange, 200, "[]");
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void retryAfterInSecondsPausesBeforeTheRetry() {
+        RequestScheduler scheduler = new RequestScheduler(8, 2, 1);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(scheduler, 0.5, 8, 0.5);
+        responses.add(exchange -> {
+            exchange.getResponseHeaders().add(HttpHeaders.RETRY_AFTER, "1");
+            respond(exchange, 429, "");
+        });
+
+        client(scheduler, limiter).getHeroes();
+
+        assertThat(requestNanos).hasSize(2);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(requestNanos.get(1) - requestNanos.get(0))).isGreaterThanOrEqualTo(950);
+        assertThat(limiter.getStats()).containsEntry("throttled", 1L);
+        // Halved from 8, then one success step
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(4.5, within(1e-9));
+    }
+
+    @Test
+    void retryAfterAsHttpDatePausesUntilThatTime() {
+        RequestScheduler scheduler = new RequestScheduler(8, 2, 1);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(scheduler, 0.5, 8, 0.5);
+        // The date has whole-second precision, so the wait is between 2 and 3 seconds
+        String retryAt = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(3));
+        responses.add(exchange -> {
+            exchange.getResponseHeaders().add(HttpHeaders.RETRY_AFTER, retryAt);
+            respond(exchange, 429, "");
+        });
+
+        client(scheduler, limiter).getHeroes();
+
+        assertThat(requestNanos).hasSize(2);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(requestNanos.get(1) - requestNanos.get(0))).isBetween(1900L, 3500L);
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(4.5, within(1e-9));
+    }
+
+    @Test
+    void aBurstOfThrottledResponsesLowersTheRateOnce() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler(8, 2, 1);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(scheduler, 0.5, 8, 0.5, 300);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                limiter.onThrottled(new HttpHeaders(), 0);
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(limiter.getStats()).containsEntry("throttled", 8L);
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(4, within(1e-9));
+
+        // Once the window has passed a new 429 counts again
+        Thread.sleep(350);
+        limiter.onThrottled(new HttpHeaders(), 0);
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(2, within(1e-9));
+    }
+
+    @Test
+    void rateRecoversAfterSuccesses() {
+        RequestScheduler scheduler = new RequestScheduler(4, 2, 1);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(scheduler, 0.5, 4, 1);
+        responses.add(exchange -> respond(exchange, 429, ""));
+
+        OpenDotaClient client = client(scheduler, limiter);
+        client.getHeroes();
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(3, within(1e-9));
+
+        for (int i = 0; i < 3; i++) {
+            client.getHeroes();
+        }
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(4, within(1e-9));
+        assertThat(limiter.getStats()).containsEntry("successes", 4L);
+    }
+
+    @Test
+    void remainingMinuteQuotaCapsTheRate() {
+        RequestScheduler scheduler = new RequestScheduler(4, 2, 1);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(scheduler, 0.5, 4, 1);
+        responses.add(exchange -> {
+            exchange.getResponseHeaders().add("X-Rate-Limit-Remaining-Minute", "60");
+            respond(exchange, 200, "[]");
+        });
+
+        client(scheduler, limiter).getHeroes();
+
+        assertThat(scheduler.getPermitsPerSecond()).isCloseTo(1, within(1e-9));
+        assertThat(limiter.getStats()).containsEntry("remainingMinute", 60);
+    }
+
+    private OpenDotaClient client(RequestScheduler scheduler, AdaptiveRateLimiter limiter) {
+        return new OpenDotaClient(RestClient.builder(), "http://127.0.0.1:" + server.getAddress().getPort() + "/",
+                scheduler, limiter);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        try (exchange) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                exchange.getResponseBody().write(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
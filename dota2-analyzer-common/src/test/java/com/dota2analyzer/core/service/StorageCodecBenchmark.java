@@ -0,0 +1,123 @@
+package com.dota2analyzer.core.service;
+
+import com.dota2analyzer.core.model.opendota.KillLogEntry;
+import com.dota2analyzer.core.model.opendota.MatchDetail;
+import com.dota2analyzer.core.model.opendota.PlayerDetail;
+import com.dota2analyzer.core.model.opendota.PurchaseLogEntry;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes per match_cache row and decode throughput of the legacy JSON column against {@link StorageCodec} blobs,
+ * on a synthetic 45-minute match (10 players with per-minute gold/last-hit/xp/deny series, 40 purchases and
+ * 8 kills each). Skipped in normal builds; run with
+ * {@code mvn -pl dota2-analyzer-common test -Dtest=StorageCodecBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StorageCodecBenchmark {
+
+    private static final int ROWS = 5000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void bytesPerRowAndDecodeThroughput() throws Exception {
+        ObjectMapper jsonMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        StorageCodec codec = new StorageCodec();
+        MatchDetail match = syntheticMatch();
+
+        String json = jsonMapper.writeValueAsString(match);
+        byte[] blob = codec.encode(match);
+        int jsonBytes = json.getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("bytes/row: json %,d, smile %,d, smile+deflate blob %,d (%.1fx smaller than json)%n",
+                jsonBytes, StorageCodec.decodedLength(blob), blob.length, (double) jsonBytes / blob.length);
+
+        // Same content either way
+        assertThat(jsonMapper.writeValueAsString(codec.decode(blob, MatchDetail.class))).isEqualTo(json);
+
+        // The first rounds warm up the JIT; the last one is the number to quote
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ROWS; i++) {
+                jsonMapper.readValue(json, MatchDetail.class);
+            }
+            long jsonNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROWS; i++) {
+                codec.decode(blob, MatchDetail.class);
+            }
+            long blobNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d decode: json %,.0f rows/s, blob %,.0f rows/s%n",
+                    round, ROWS / (jsonNanos / 1e9), ROWS / (blobNanos / 1e9));
+        }
+    }
+
+    private static MatchDetail syntheticMatch() {
+        Random random = new Random(1);
+        String[] items = {"tango", "branches", "magic_wand", "power_treads", "bfury", "black_king_bar", "manta",
+                "ward_observer", "clarity", "blink"};
+
+        MatchDetail match = new MatchDetail();
+        match.setMatchId(7_800_000_000L);
+        match.setDuration(2700);
+        List<PlayerDetail> players = new ArrayList<>();
+        for (int p = 0; p < 10; p++) {
+            PlayerDetail player = new PlayerDetail();
+            player.setAccountId(100000 + p);
+            player.setPlayerSlot(p < 5 ? p : 128 + p - 5);
+            player.setHeroId(random.nextInt(120));
+
+            List<Integer> gold = new ArrayList<>();
+            List<Integer> lastHits = new ArrayList<>();
+            List<Integer> xp = new ArrayList<>();
+            List<Integer> denies = new ArrayList<>();
+            int goldTotal = 0;
+            int lastHitTotal = 0;
+            int xpTotal = 0;
+            for (int minute = 0; minute < 46; minute++) {
+                goldTotal += 300 + random.nextInt(400);
+                lastHitTotal += random.nextInt(9);
+                xpTotal += 300 + random.nextInt(500);
+                gold.add(goldTotal);
+                lastHits.add(lastHitTotal);
+                xp.add(xpTotal);
+                denies.add(random.nextInt(3));
+            }
+            player.setGoldT(gold);
+            player.setLastHitsT(lastHits);
+            player.setXpT(xp);
+            player.setDeniesT(denies);
+
+            List<PurchaseLogEntry> purchases = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                PurchaseLogEntry purchase = new PurchaseLogEntry();
+                purchase.setTime(i * 60);
+                purchase.setKey(items[random.nextInt(items.length)]);
+                purchases.add(purchase);
+            }
+            player.setPurchaseLog(purchases);
+
+            List<KillLogEntry> kills = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                KillLogEntry kill = new KillLogEntry();
+                kill.setTime(random.nextInt(2700));
+                kill.setKey("npc_dota_hero_antimage");
+                kills.add(kill);
+            }
+            player.setKillsLog(kills);
+            players.add(player);
+        }
+        match.setPlayers(players);
+        return match;
+    }
+}
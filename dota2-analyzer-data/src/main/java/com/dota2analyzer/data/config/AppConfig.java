@@ -1,12 +1,17 @@
 package com.dota2analyzer.data.config;
 
+import com.dota2analyzer.core.service.AdaptiveRateLimiter;
 import com.dota2analyzer.core.service.HeroDataCache;
 import com.dota2analyzer.core.service.MatchCache;
+import com.dota2analyzer.core.service.MemoryCache;
 import com.dota2analyzer.core.service.OpenDotaClient;
+import com.dota2analyzer.core.service.RequestScheduler;
 import com.dota2analyzer.data.service.DemDownloadService;
 import com.dota2analyzer.data.service.HeroImageCache;
 import com.dota2analyzer.data.service.ItemImageCache;
+import com.dota2analyzer.data.service.ParallelBzip2Decompressor;
 import com.dota2analyzer.data.service.PreloadService;
+import com.dota2analyzer.data.service.ReplayStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -14,6 +19,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestClient;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -28,6 +35,11 @@ public class AppConfig {
     private boolean cacheOnly = false;
     private List<Long> permanentAccounts = new ArrayList<>();
     private Db db = new Db();
+    private MemoryCacheSettings memoryCache = new MemoryCacheSettings();
+    private OpenDotaSettings openDota = new OpenDotaSettings();
+    private HeroDataSettings heroData = new HeroDataSettings();
+    private ReplaySettings replay = new ReplaySettings();
+    private PreloadSettings preload = new PreloadSettings();
 
     public static class Db {
         private String url;
@@ -41,25 +53,119 @@ public class AppConfig {
         public void setPassword(String password) { this.password = password; }
     }
 
+    public static class MemoryCacheSettings {
+        private long maxWeight = 64L * 1024 * 1024;
+        private int ttlMinutes = 10;
+        public long getMaxWeight() { return maxWeight; }
+        public void setMaxWeight(long maxWeight) { this.maxWeight = maxWeight; }
+        public int getTtlMinutes() { return ttlMinutes; }
+        public void setTtlMinutes(int ttlMinutes) { this.ttlMinutes = ttlMinutes; }
+    }
+
+    public static class OpenDotaSettings {
+        private String baseUrl = "https://api.opendota.com/api/";
+        private double permitsPerSecond = 1000.0 / 1100;
+        private double minPermitsPerSecond = 0.2;
+        private double maxPermitsPerSecond = 1000.0 / 1100;
+        private double increaseStep = 0.02;
+        private int burst = 2;
+        private int reservedForInteractive = 1;
+        public String getBaseUrl() { return baseUrl; }
+        public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+        public double getPermitsPerSecond() { return permitsPerSecond; }
+        public void setPermitsPerSecond(double permitsPerSecond) { this.permitsPerSecond = permitsPerSecond; }
+        public double getMinPermitsPerSecond() { return minPermitsPerSecond; }
+        public void setMinPermitsPerSecond(double minPermitsPerSecond) { this.minPermitsPerSecond = minPermitsPerSecond; }
+        public double getMaxPermitsPerSecond() { return maxPermitsPerSecond; }
+        public void setMaxPermitsPerSecond(double maxPermitsPerSecond) { this.maxPermitsPerSecond = maxPermitsPerSecond; }
+        public double getIncreaseStep() { return increaseStep; }
+        public void setIncreaseStep(double increaseStep) { this.increaseStep = increaseStep; }
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+        public int getReservedForInteractive() { return reservedForInteractive; }
+        public void setReservedForInteractive(int reservedForInteractive) { this.reservedForInteractive = reservedForInteractive; }
+    }
+
+    public static class HeroDataSettings {
+        private int refreshMinutes = 60;
+        private int maxAgeHours = 24;
+        private String snapshotPath;
+        public int getRefreshMinutes() { return refreshMinutes; }
+        public void setRefreshMinutes(int refreshMinutes) { this.refreshMinutes = refreshMinutes; }
+        public int getMaxAgeHours() { return maxAgeHours; }
+        public void setMaxAgeHours(int maxAgeHours) { this.maxAgeHours = maxAgeHours; }
+        public String getSnapshotPath() { return snapshotPath; }
+        public void setSnapshotPath(String snapshotPath) { this.snapshotPath = snapshotPath; }
+    }
+
+    public static class ReplaySettings {
+        private int decompressThreads = 0;
+        private int maxConcurrentDownloads = 2;
+        private int maxRetries = 5;
+        private int retentionMinutes = 10;
+        private String urlFormat;
+        private String dir;
+        private long maxBytes = 20L * 1024 * 1024 * 1024;
+        private int maxAgeDays = 7;
+        public int getDecompressThreads() { return decompressThreads; }
+        public void setDecompressThreads(int decompressThreads) { this.decompressThreads = decompressThreads; }
+        public int getMaxConcurrentDownloads() { return maxConcurrentDownloads; }
+        public void setMaxConcurrentDownloads(int maxConcurrentDownloads) { this.maxConcurrentDownloads = maxConcurrentDownloads; }
+        public int getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+        public int getRetentionMinutes() { return retentionMinutes; }
+        public void setRetentionMinutes(int retentionMinutes) { this.retentionMinutes = retentionMinutes; }
+        public String getUrlFormat() { return urlFormat; }
+        public void setUrlFormat(String urlFormat) { this.urlFormat = urlFormat; }
+        public String getDir() { return dir; }
+        public void setDir(String dir) { this.dir = dir; }
+        public long getMaxBytes() { return maxBytes; }
+        public void setMaxBytes(long maxBytes) { this.maxBytes = maxBytes; }
+        public int getMaxAgeDays() { return maxAgeDays; }
+        public void setMaxAgeDays(int maxAgeDays) { this.maxAgeDays = maxAgeDays; }
+    }
+
+    public static class PreloadSettings {
+        private int maxInFlight = 8;
+        private int imageConcurrency = 4;
+        public int getMaxInFlight() { return maxInFlight; }
+        public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+        public int getImageConcurrency() { return imageConcurrency; }
+        public void setImageConcurrency(int imageConcurrency) { this.imageConcurrency = imageConcurrency; }
+    }
+
     public void setCacheOnly(boolean cacheOnly) { this.cacheOnly = cacheOnly; }
     public void setPermanentAccounts(List<Long> permanentAccounts) { this.permanentAccounts = permanentAccounts; }
     public void setDb(Db db) { this.db = db; }
+    public void setMemoryCache(MemoryCacheSettings memoryCache) { this.memoryCache = memoryCache; }
+    public void setOpenDota(OpenDotaSettings openDota) { this.openDota = openDota; }
+    public void setHeroData(HeroDataSettings heroData) { this.heroData = heroData; }
+    public void setReplay(ReplaySettings replay) { this.replay = replay; }
+    public void setPreload(PreloadSettings preload) { this.preload = preload; }
 
     @Bean
     public OpenDotaClient openDotaClient() {
-        return new OpenDotaClient(RestClient.builder());
+        RequestScheduler scheduler = new RequestScheduler(
+                openDota.getPermitsPerSecond(), openDota.getBurst(), openDota.getReservedForInteractive());
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(scheduler,
+                openDota.getMinPermitsPerSecond(), openDota.getMaxPermitsPerSecond(), openDota.getIncreaseStep());
+        return new OpenDotaClient(RestClient.builder(), openDota.getBaseUrl(), scheduler, rateLimiter);
     }
 
     @Bean
     public MatchCache matchCache() {
         Set<Long> accounts = permanentAccounts != null ? new HashSet<>(permanentAccounts) : Set.of();
         log.info("MatchCache permanent accounts: {}", accounts);
-        return new MatchCache(db.getUrl(), db.getUser(), db.getPassword(), accounts);
+        MemoryCache memory = new MemoryCache(memoryCache.getMaxWeight(), Duration.ofMinutes(memoryCache.getTtlMinutes()));
+        return new MatchCache(db.getUrl(), db.getUser(), db.getPassword(), accounts, memory);
     }
 
     @Bean
     public HeroDataCache heroDataCache(OpenDotaClient openDotaClient, MatchCache matchCache) {
-        return new HeroDataCache(openDotaClient, matchCache, cacheOnly);
+        HeroDataCache heroDataCache = new HeroDataCache(openDotaClient, matchCache, cacheOnly,
+                Duration.ofHours(heroData.getMaxAgeHours()), heroDataSnapshotPath());
+        heroDataCache.start(Duration.ofMinutes(heroData.getRefreshMinutes()));
+        return heroDataCache;
     }
 
     @Bean
@@ -74,11 +180,27 @@ public class AppConfig {
 
     @Bean
     public PreloadService preloadService(OpenDotaClient openDotaClient, MatchCache matchCache, HeroImageCache heroImageCache) {
-        return new PreloadService(openDotaClient, matchCache, heroImageCache);
+        return new PreloadService(openDotaClient, matchCache, heroImageCache,
+                preload.getMaxInFlight(), preload.getImageConcurrency());
+    }
+
+    @Bean
+    public ReplayStore replayStore(MatchCache matchCache) {
+        Path dir = Path.of(replay.getDir() != null ? replay.getDir() : System.getProperty("user.home") + "/.dota2analyzer/replays");
+        Set<Long> accounts = permanentAccounts != null ? new HashSet<>(permanentAccounts) : Set.of();
+        return new ReplayStore(dir, replay.getMaxBytes(),
+                replay.getMaxAgeDays() > 0 ? Duration.ofDays(replay.getMaxAgeDays()) : null, matchCache, accounts);
     }
 
     @Bean
-    public DemDownloadService demDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache) {
-        return new DemDownloadService(openDotaClient, matchCache);
+    public DemDownloadService demDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache, ReplayStore replayStore) {
+        return new DemDownloadService(openDotaClient, matchCache, replayStore,
+                new ParallelBzip2Decompressor(replay.getDecompressThreads()), replay.getUrlFormat(),
+                replay.getMaxConcurrentDownloads(), replay.getMaxRetries(), Duration.ofMinutes(replay.getRetentionMinutes()));
+    }
+
+    private Path heroDataSnapshotPath() {
+        String path = heroData.getSnapshotPath();
+        return Path.of(path != null ? path : System.getProperty("user.home") + "/.dota2analyzer/hero-data.json");
     }
 }
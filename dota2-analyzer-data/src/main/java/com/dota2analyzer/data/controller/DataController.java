@@ -7,13 +7,19 @@ import com.dota2analyzer.core.service.MatchCache;
 import com.dota2analyzer.core.service.OpenDotaClient;
 import com.dota2analyzer.data.dto.PreloadStatus;
 import com.dota2analyzer.data.service.DemDownloadService;
+import com.dota2analyzer.data.service.MatchSyncService;
 import com.dota2analyzer.data.service.PreloadService;
+import com.dota2analyzer.data.service.ReplayStore;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/internal")
@@ -23,13 +29,18 @@ public class DataController {
     private final MatchCache matchCache;
     private final DemDownloadService demDownloadService;
     private final PreloadService preloadService;
+    private final ReplayStore replayStore;
+    private final MatchSyncService matchSyncService;
 
     public DataController(OpenDotaClient openDotaClient, MatchCache matchCache,
-                         DemDownloadService demDownloadService, PreloadService preloadService) {
+                         DemDownloadService demDownloadService, PreloadService preloadService,
+                         ReplayStore replayStore, MatchSyncService matchSyncService) {
         this.openDotaClient = openDotaClient;
         this.matchCache = matchCache;
         this.demDownloadService = demDownloadService;
         this.preloadService = preloadService;
+        this.replayStore = replayStore;
+        this.matchSyncService = matchSyncService;
     }
 
     @PostMapping("/players/{accountId}/matches")
@@ -71,13 +82,29 @@ public class DataController {
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Download the replay, by default waiting for it and returning its path. With {@code wait=false} the
+     * download is only queued and its status returned; poll GET for progress.
+     */
     @PostMapping("/matches/{matchId}/download-dem")
-    public ResponseEntity<String> downloadDem(@PathVariable long matchId) {
+    public ResponseEntity<?> downloadDem(
+            @PathVariable long matchId,
+            @RequestParam(defaultValue = "true") boolean wait) {
+        if (!wait) {
+            DemDownloadService.Download download = demDownloadService.submit(matchId);
+            return ResponseEntity.status(download.isFinished() ? HttpStatus.OK : HttpStatus.ACCEPTED).body(download.toMap());
+        }
         Optional<Path> path = demDownloadService.ensureReplayFile(matchId);
         return path.map(p -> ResponseEntity.ok(p.toString()))
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/matches/{matchId}/download-dem")
+    public ResponseEntity<Map<String, Object>> downloadDemStatus(@PathVariable long matchId) {
+        DemDownloadService.Download download = demDownloadService.getDownload(matchId);
+        return download != null ? ResponseEntity.ok(download.toMap()) : ResponseEntity.notFound().build();
+    }
+
     @PostMapping("/players/{accountId}/preload")
     public ResponseEntity<PreloadStatus> startPreload(
             @PathVariable long accountId,
@@ -86,9 +113,27 @@ public class DataController {
         return ResponseEntity.ok(status);
     }
 
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("openDota", openDotaClient.getStats());
+        stats.put("memoryCache", matchCache.getMemoryStats());
+        stats.put("replayDownloads", demDownloadService.getStats());
+        stats.put("replayStore", replayStore.getStats());
+        stats.put("matchSync", matchSyncService.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * With {@code waitMs}, long-polls: the response is held until the preload changes past version
+     * {@code since} (or the wait runs out), and carries only the rows after the first {@code after}.
+     */
     @GetMapping("/players/{accountId}/preload-status")
-    public ResponseEntity<PreloadStatus> getPreloadStatus(@PathVariable long accountId) {
-        PreloadStatus status = preloadService.getStatus(accountId);
-        return ResponseEntity.ok(status);
+    public CompletableFuture<ResponseEntity<PreloadStatus>> getPreloadStatus(
+            @PathVariable long accountId,
+            @RequestParam(defaultValue = "-1") long since,
+            @RequestParam(defaultValue = "0") int after,
+            @RequestParam(defaultValue = "0") long waitMs) {
+        return preloadService.awaitStatus(accountId, since, after, waitMs).thenApply(ResponseEntity::ok);
     }
 }
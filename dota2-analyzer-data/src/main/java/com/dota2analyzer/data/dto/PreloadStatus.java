@@ -4,14 +4,20 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Snapshot of a preload run. {@code matches} holds the rows from {@code rowOffset} on; a client that asked
+ * for only the rows it lacks appends them to the first {@code rowOffset} rows it already has.
+ */
 public class PreloadStatus {
     private long accountId;
+    private long version;
     private int total;
     private int completed;
     private int failed;
     private boolean running;
     private String message = "未开始";
     private OffsetDateTime lastUpdated = OffsetDateTime.now();
+    private int rowOffset;
     private List<PreloadMatchRow> matches = new ArrayList<>();
 
     public PreloadStatus() {}
@@ -23,6 +29,9 @@ public class PreloadStatus {
     public long getAccountId() { return accountId; }
     public void setAccountId(long accountId) { this.accountId = accountId; }
 
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
     public int getTotal() { return total; }
     public void setTotal(int total) { this.total = total; }
 
@@ -41,6 +50,9 @@ public class PreloadStatus {
     public OffsetDateTime getLastUpdated() { return lastUpdated; }
     public void setLastUpdated(OffsetDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
 
+    public int getRowOffset() { return rowOffset; }
+    public void setRowOffset(int rowOffset) { this.rowOffset = rowOffset; }
+
     public List<PreloadMatchRow> getMatches() { return matches; }
     public void setMatches(List<PreloadMatchRow> matches) { this.matches = matches; }
 }
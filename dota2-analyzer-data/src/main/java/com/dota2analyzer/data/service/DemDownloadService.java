@@ -10,49 +10,129 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
-public class DemDownloadService {
+/**
+ * Downloads replays from Valve's replay servers into the shared replay directory.
+ *
+ * <p>Downloads run on a pool of {@code maxConcurrent} workers and are deduplicated per match, so concurrent
+ * callers for the same replay share one download (and one temp file). The compressed stream is saved to
+ * {@code {matchId}.dem.bz2.part} while it is decompressed; a dropped connection resumes with an HTTP Range
+ * request, and a download that failed outright resumes from the part file on the next attempt. Finished
+ * jobs are kept for {@code retention} so their outcome can be polled.
+ */
+public class DemDownloadService implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(DemDownloadService.class);
-    private static final Duration CLEANUP_AGE = Duration.ofDays(7);
+    private static final String DEFAULT_URL_FORMAT = "http://replay%d.valve.net/570/%d_%d.dem.bz2";
+
+    public enum Status { QUEUED, DOWNLOADING, DONE, UNAVAILABLE, FAILED }
+
+    public static final class Download {
+        private final long matchId;
+        private final Instant submittedAt = Instant.now();
+        private final CompletableFuture<Optional<Path>> result = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile ResumableDownloadStream stream;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private Download(long matchId) {
+            this.matchId = matchId;
+        }
+
+        public long getMatchId() { return matchId; }
+        public Status getStatus() { return status; }
+        public CompletableFuture<Optional<Path>> getResult() { return result; }
+
+        public boolean isFinished() {
+            return status == Status.DONE || status == Status.UNAVAILABLE || status == Status.FAILED;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("matchId", matchId);
+            map.put("status", status.name());
+            ResumableDownloadStream s = stream;
+            if (s != null) {
+                map.put("bytesDownloaded", s.getDownloaded());
+                map.put("totalBytes", s.getTotal());
+                if (s.getTotal() > 0) {
+                    map.put("progress", Math.round(s.getDownloaded() * 1000.0 / s.getTotal()) / 10.0);
+                }
+                map.put("resumedFrom", s.getResumedFrom());
+                map.put("reconnects", s.getReconnects());
+            }
+            map.put("submittedAt", submittedAt.toString());
+            if (startedAt != null) map.put("startedAt", startedAt.toString());
+            if (finishedAt != null) map.put("finishedAt", finishedAt.toString());
+            if (error != null) map.put("error", error);
+            return map;
+        }
+    }
 
     private final OpenDotaClient openDotaClient;
     private final MatchCache matchCache;
+    private final ReplayStore replayStore;
     private final Path replayDir;
     private final HttpClient httpClient;
+    private final ParallelBzip2Decompressor decompressor;
+    private final String urlFormat;
+    private final int maxRetries;
+    private final Duration retention;
+    private final Duration retryBackoff;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, Download> downloads = new ConcurrentHashMap<>();
+    private final LongAdder deduplicated = new LongAdder();
 
     public DemDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache) {
-        this(openDotaClient, matchCache, null);
+        this(openDotaClient, matchCache,
+                new ReplayStore(Paths.get(System.getProperty("user.home"), ".dota2analyzer", "replays"), 0, null, null, Set.of()),
+                new ParallelBzip2Decompressor(0), null, 2, 5, Duration.ofMinutes(10));
+    }
+
+    /**
+     * @param urlFormat     replay URL with cluster, match id and replay salt placeholders; null for Valve's
+     * @param maxConcurrent downloads running at once; further ones wait in the queue
+     * @param maxRetries    reconnects in a row without progress before a download fails
+     */
+    public DemDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache, ReplayStore replayStore,
+                              ParallelBzip2Decompressor decompressor, String urlFormat, int maxConcurrent,
+                              int maxRetries, Duration retention) {
+        this(openDotaClient, matchCache, replayStore, decompressor, urlFormat, maxConcurrent, maxRetries, retention,
+                Duration.ofSeconds(2));
     }
 
-    public DemDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache, String replayDirPath) {
+    DemDownloadService(OpenDotaClient openDotaClient, MatchCache matchCache, ReplayStore replayStore,
+                       ParallelBzip2Decompressor decompressor, String urlFormat, int maxConcurrent,
+                       int maxRetries, Duration retention, Duration retryBackoff) {
         this.openDotaClient = openDotaClient;
         this.matchCache = matchCache;
+        this.replayStore = replayStore;
+        this.replayDir = replayStore.getDir();
+        this.decompressor = decompressor;
+        this.urlFormat = urlFormat != null ? urlFormat : DEFAULT_URL_FORMAT;
+        this.maxRetries = maxRetries;
+        this.retention = retention;
+        this.retryBackoff = retryBackoff;
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(30))
+                .followRedirects(HttpClient.Redirect.NORMAL)
                 .build();
-
-        if (replayDirPath != null) {
-            this.replayDir = Paths.get(replayDirPath);
-        } else {
-            String home = System.getProperty("user.home");
-            this.replayDir = Paths.get(home, ".dota2analyzer", "replays");
-        }
-
-        try {
-            Files.createDirectories(this.replayDir);
-        } catch (IOException e) {
-            log.warn("Failed to create replay directory", e);
-        }
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrent),
+                Thread.ofVirtual().name("replay-download-", 0).factory());
     }
 
     /**
@@ -64,96 +144,175 @@ public class DemDownloadService {
     }
 
     /**
-     * Download and decompress a DEM replay file for the given match.
+     * Download and decompress a DEM replay file for the given match, waiting for it.
      * Returns the path to the .dem file, or empty if unavailable.
      */
     public Optional<Path> downloadReplay(long matchId) {
-        // Check if already cached locally
+        try {
+            return submit(matchId).result.join();
+        } catch (CompletionException | CancellationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Queue a download for {@code matchId}, or return the one already queued, running or recently finished.
+     * Failed and unavailable downloads are retried (resuming from their part file).
+     */
+    public Download submit(long matchId) {
+        pruneFinished();
+        // A replay already on disk needs no worker, so answer now rather than queueing behind running downloads
         Path demFile = replayDir.resolve(matchId + ".dem");
         if (Files.exists(demFile)) {
-            log.info("Replay already cached: {}", demFile);
-            return Optional.of(demFile);
+            replayStore.touch(matchId);
+            Download cached = new Download(matchId);
+            cached.startedAt = cached.submittedAt;
+            cached.finishedAt = cached.submittedAt;
+            cached.status = Status.DONE;
+            cached.result.complete(Optional.of(demFile));
+            downloads.put(matchId, cached);
+            return cached;
         }
 
-        // Get match detail for cluster + replay_salt
-        MatchDetail detail = matchCache.getMatchDetail(matchId, Duration.ofDays(30));
-        if (detail == null) {
-            detail = openDotaClient.getMatchDetail(matchId);
-            if (detail != null) {
-                matchCache.saveMatchDetail(matchId, detail);
+        Download download = new Download(matchId);
+        Download existing = downloads.putIfAbsent(matchId, download);
+        if (existing != null) {
+            if (existing.status != Status.FAILED && existing.status != Status.UNAVAILABLE) {
+                deduplicated.increment();
+                return existing;
+            }
+            if (!downloads.replace(matchId, existing, download)) {
+                return submit(matchId);
             }
         }
+        executor.execute(() -> run(download));
+        return download;
+    }
 
-        if (detail == null || detail.getCluster() == null || detail.getReplaySalt() == null) {
-            log.warn("Cannot download replay for match {}: missing cluster or replay_salt", matchId);
-            return Optional.empty();
-        }
+    /** The download for {@code matchId}, or null if none was submitted or it has expired. */
+    public Download getDownload(long matchId) {
+        pruneFinished();
+        return downloads.get(matchId);
+    }
 
-        String url = String.format("http://replay%d.valve.net/570/%d_%d.dem.bz2",
-                detail.getCluster(), matchId, detail.getReplaySalt());
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("downloading", downloads.values().stream().filter(d -> d.status == Status.DOWNLOADING).count());
+        stats.put("queued", downloads.values().stream().filter(d -> d.status == Status.QUEUED).count());
+        stats.put("trackedDownloads", downloads.size());
+        stats.put("deduplicated", deduplicated.sum());
+        return stats;
+    }
 
-        log.info("Downloading replay from {}", url);
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
 
+    private void run(Download download) {
+        download.startedAt = Instant.now();
+        download.status = Status.DOWNLOADING;
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMinutes(5))
-                    .GET()
-                    .build();
+            Optional<Path> path = fetch(download);
+            download.finishedAt = Instant.now();
+            download.status = path.isPresent() ? Status.DONE : Status.UNAVAILABLE;
+            download.result.complete(path);
+        } catch (Exception e) {
+            log.error("Failed to download replay for match {}", download.matchId, e);
+            download.error = e.getMessage();
+            download.finishedAt = Instant.now();
+            download.status = Status.FAILED;
+            download.result.complete(Optional.empty());
+        }
+    }
+
+    private Optional<Path> fetch(Download download) throws IOException {
+        long matchId = download.matchId;
+        // Written by another download while this one was queued
+        Path demFile = replayDir.resolve(matchId + ".dem");
+        if (Files.exists(demFile)) {
+            log.info("Replay already cached: {}", demFile);
+            replayStore.touch(matchId);
+            return Optional.of(demFile);
+        }
 
-            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Optional<URI> uri = replayUri(matchId);
+        if (uri.isEmpty()) {
+            return Optional.empty();
+        }
+        log.info("Downloading replay from {}", uri.get());
 
-            if (response.statusCode() != 200) {
-                log.warn("Replay download failed with status {} for match {}", response.statusCode(), matchId);
+        Path partFile = replayDir.resolve(matchId + ".dem.bz2.part");
+        Path tempFile = replayDir.resolve(matchId + ".dem.tmp");
+        long start = System.nanoTime();
+        try (ResumableDownloadStream stream = new ResumableDownloadStream(httpClient, uri.get(), partFile,
+                maxRetries, retryBackoff)) {
+            download.stream = stream;
+            // Decompress bz2 on all cores while it downloads. If that fails (a corrupt block, or the rare
+            // false block split) finish the download and decode the saved file sequentially instead
+            try {
+                decompressor.decompress(stream, tempFile);
+            } catch (ResumableDownloadStream.HttpStatusException e) {
+                log.warn("Replay for match {} unavailable: {}", matchId, e.getMessage());
+                Files.deleteIfExists(partFile);
+                Files.deleteIfExists(tempFile);
                 return Optional.empty();
-            }
-
-            // Decompress bz2 and write to local file
-            Path tempFile = replayDir.resolve(matchId + ".dem.tmp");
-            try (InputStream is = response.body();
-                 BZip2CompressorInputStream bz2is = new BZip2CompressorInputStream(new BufferedInputStream(is));
-                 OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
-                byte[] buffer = new byte[8192];
-                int len;
-                while ((len = bz2is.read(buffer)) != -1) {
-                    os.write(buffer, 0, len);
+            } catch (IOException e) {
+                // Shutting down or cancelled, not a decoding problem (an interrupted channel write surfaces as
+                // ClosedByInterruptException, so check the flag as well)
+                if (e instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) throw e;
+                log.warn("Parallel replay decompression failed for match {}, retrying sequentially", matchId, e);
+                stream.drain();
+                try (InputStream saved = Files.newInputStream(partFile)) {
+                    decompressSequential(saved, tempFile);
+                } catch (IOException corrupt) {
+                    // The whole file is here and still doesn't decode; don't resume from it next time
+                    Files.deleteIfExists(partFile);
+                    throw corrupt;
                 }
             }
+        } catch (IOException e) {
+            // Keep the part file so the next attempt resumes; the decompressed temp file is rebuilt anyway
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
 
-            Files.move(tempFile, demFile);
-            log.info("Replay downloaded and decompressed: {} ({}KB)", demFile, Files.size(demFile) / 1024);
-            return Optional.of(demFile);
+        Files.move(tempFile, demFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(partFile);
+        replayStore.record(matchId);
+        log.info("Replay downloaded and decompressed: {} ({}KB in {}ms)", demFile, Files.size(demFile) / 1024,
+                (System.nanoTime() - start) / 1_000_000);
+        return Optional.of(demFile);
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to download replay for match {}", matchId, e);
+    /** Replay URL built from the match's cluster and replay salt, or empty if OpenDota doesn't have them. */
+    Optional<URI> replayUri(long matchId) {
+        // Get match detail for cluster + replay_salt
+        MatchDetail detail = matchCache.getMatchDetail(matchId, Duration.ofDays(30));
+        if (detail == null) {
+            detail = openDotaClient.getMatchDetail(matchId);
+            if (detail != null) {
+                matchCache.saveMatchDetail(matchId, detail);
+            }
+        }
+
+        if (detail == null || detail.getCluster() == null || detail.getReplaySalt() == null) {
+            log.warn("Cannot download replay for match {}: missing cluster or replay_salt", matchId);
             return Optional.empty();
         }
+        return Optional.of(URI.create(String.format(urlFormat, detail.getCluster(), matchId, detail.getReplaySalt())));
     }
 
-    /**
-     * Clean up replay files older than 7 days.
-     */
-    public void cleanupOldReplays() {
-        try (Stream<Path> files = Files.list(replayDir)) {
-            Instant cutoff = Instant.now().minus(CLEANUP_AGE);
-            files.filter(f -> f.toString().endsWith(".dem"))
-                    .filter(f -> {
-                        try {
-                            return Files.getLastModifiedTime(f).toInstant().isBefore(cutoff);
-                        } catch (IOException e) {
-                            return false;
-                        }
-                    })
-                    .forEach(f -> {
-                        try {
-                            Files.delete(f);
-                            log.info("Cleaned up old replay: {}", f.getFileName());
-                        } catch (IOException e) {
-                            log.warn("Failed to delete old replay: {}", f, e);
-                        }
-                    });
-        } catch (IOException e) {
-            log.warn("Failed to list replay directory for cleanup", e);
+    private void pruneFinished() {
+        Instant cutoff = Instant.now().minus(retention);
+        downloads.values().removeIf(d -> d.isFinished() && d.finishedAt.isBefore(cutoff));
+    }
+
+    static void decompressSequential(InputStream in, Path target) throws IOException {
+        // Concatenated streams decode as one, the same as the parallel path
+        try (BZip2CompressorInputStream bz2is = new BZip2CompressorInputStream(new BufferedInputStream(in, 1024 * 1024), true);
+             OutputStream os = new BufferedOutputStream(Files.newOutputStream(target), 1024 * 1024)) {
+            bz2is.transferTo(os);
         }
     }
 }
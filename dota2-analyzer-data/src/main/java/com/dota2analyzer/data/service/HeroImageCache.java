@@ -15,6 +15,7 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.List;
 
@@ -74,9 +75,17 @@ public class HeroImageCache {
                     log.warn("Hero image download failed {} for {}", response.statusCode(), url);
                     continue;
                 }
-                try (InputStream is = response.body();
-                     OutputStream os = new BufferedOutputStream(Files.newOutputStream(localPath))) {
-                    is.transferTo(os);
+                // Preload and the asset endpoint may fetch the same hero at once; write aside and move so
+                // nobody serves a half-written file
+                Path tempPath = Files.createTempFile(heroImageDir, heroKey, ".tmp");
+                try {
+                    try (InputStream is = response.body();
+                         OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                        is.transferTo(os);
+                    }
+                    Files.move(tempPath, localPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tempPath);
                 }
                 log.info("Hero image saved {}", localPath);
                 return localPath.toString();
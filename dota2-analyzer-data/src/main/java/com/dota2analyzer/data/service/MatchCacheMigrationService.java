@@ -0,0 +1,43 @@
+package com.dota2analyzer.data.service;
+
+import com.dota2analyzer.core.service.MatchCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Gradually rewrites legacy JSON rows in match_cache into the compressed binary format.
+ * Reads fall back to JSON, so the migration can run at its own pace.
+ */
+@Service
+public class MatchCacheMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchCacheMigrationService.class);
+    private static final int BATCH_SIZE = 200;
+    private static final int BATCHES_PER_RUN = 10;
+
+    private final MatchCache cache;
+    private long cursor = 0;
+    private volatile boolean finished;
+
+    public MatchCacheMigrationService(MatchCache cache) {
+        this.cache = cache;
+    }
+
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 2 * 60 * 1000)
+    public void migrateBatch() {
+        if (finished) return;
+
+        for (int i = 0; i < BATCHES_PER_RUN; i++) {
+            long last = cache.migrateLegacyMatchRows(cursor, BATCH_SIZE);
+            if (last < 0) {
+                finished = true;
+                log.info("match_cache binary migration complete");
+                return;
+            }
+            cursor = last;
+        }
+        log.info("match_cache binary migration progressed to match {}", cursor);
+    }
+}
@@ -3,107 +3,285 @@ package com.dota2analyzer.data.service;
 import com.dota2analyzer.core.model.opendota.MatchDetail;
 import com.dota2analyzer.core.model.opendota.RecentMatch;
 import com.dota2analyzer.core.service.MatchCache;
+import com.dota2analyzer.core.service.MatchCache.SyncWatermark;
 import com.dota2analyzer.core.service.OpenDotaClient;
+import com.dota2analyzer.core.service.RequestPriority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+/**
+ * Keeps the match history of tracked accounts current.
+ *
+ * <p>Each account has a watermark, the newest match already stored. A sync asks OpenDota for the latest
+ * page and keeps only the matches past the watermark. It pages back further only when a whole page is
+ * new. Those matches are appended to the stored list and the watermark moves up, so an account with
+ * nothing new costs one upstream call and no database write. If {@link #MAX_PAGES} pages do not reach the
+ * watermark, the matches found so far are held in memory and the next cycle resumes paging below them;
+ * nothing is stored until the watermark is reached, so the watermark never skips unfetched matches.
+ * Accounts sync concurrently on a small pool.
+ * All upstream calls go through the shared scheduler at SYNC priority, which paces the cycle and yields
+ * to interactive requests.
+ */
 @Service
-public class MatchSyncService {
+public class MatchSyncService implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(MatchSyncService.class);
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 5;
 
     private final OpenDotaClient client;
     private final MatchCache cache;
     private final HeroImageCache heroImages;
+    private final ReplayStore replayStore;
     private final List<Long> syncAccounts;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, SyncWatermark> watermarks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Backfill> backfills = new ConcurrentHashMap<>();
+    private final AtomicBoolean cycleRunning = new AtomicBoolean();
+
+    private final LongAdder cycles = new LongAdder();
+    private final LongAdder skippedCycles = new LongAdder();
+    private final LongAdder syncedMatches = new LongAdder();
+    private final LongAdder failedAccounts = new LongAdder();
+    private volatile Instant lastCycleAt;
+    private volatile long lastCycleMs;
+    private volatile int lastCycleNewMatches;
+
+    /** Matches past the watermark found by a sync that ran out of pages, and the offset it stopped at. */
+    private record Backfill(List<RecentMatch> found, int nextOffset) {
+        SyncWatermark head() {
+            RecentMatch newest = found.get(0);
+            return new SyncWatermark(newest.getMatchId(), newest.getStartTime());
+        }
+    }
 
     public MatchSyncService(OpenDotaClient client, MatchCache cache, HeroImageCache heroImages,
-                           @Value("${analyzer.permanent-accounts:}") List<Long> syncAccounts) {
+                           ReplayStore replayStore,
+                           @Value("${analyzer.permanent-accounts:}") List<Long> syncAccounts,
+                           @Value("${analyzer.sync.concurrency:4}") int concurrency) {
         this.client = client;
         this.cache = cache;
         this.heroImages = heroImages;
+        this.replayStore = replayStore;
         this.syncAccounts = syncAccounts != null ? syncAccounts : List.of();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency),
+                Thread.ofVirtual().name("match-sync-", 0).factory());
     }
 
     @Scheduled(fixedRate = 30 * 60 * 1000, initialDelay = 60 * 1000)
     public void syncNewMatches() {
-        for (long accountId : syncAccounts) {
-            try {
-                syncAccount(accountId);
-            } catch (Exception e) {
-                log.error("Sync failed for account {}", accountId, e);
+        if (!cycleRunning.compareAndSet(false, true)) {
+            // With hundreds of accounts a slow upstream can stretch a cycle past the interval
+            skippedCycles.increment();
+            log.warn("Previous match sync still running, skipping this cycle");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            watermarks.putAll(cache.getSyncWatermarks());
+            Set<Integer> heroesSeen = ConcurrentHashMap.newKeySet();
+            List<CompletableFuture<Integer>> accounts = new ArrayList<>();
+            for (long accountId : syncAccounts) {
+                accounts.add(CompletableFuture.supplyAsync(() -> syncAccount(accountId, heroesSeen), executor)
+                        .exceptionally(e -> {
+                            failedAccounts.increment();
+                            log.error("Sync failed for account {}", accountId, e);
+                            return 0;
+                        }));
             }
+            int newMatches = accounts.stream().mapToInt(CompletableFuture::join).sum();
+
+            cycles.increment();
+            lastCycleAt = Instant.now();
+            lastCycleMs = (System.nanoTime() - start) / 1_000_000;
+            lastCycleNewMatches = newMatches;
+            log.info("Match sync cycle done in {}ms: {} accounts, {} new matches",
+                    lastCycleMs, syncAccounts.size(), newMatches);
+        } finally {
+            cycleRunning.set(false);
         }
     }
 
-    private void syncAccount(long accountId) {
-        log.info("Sync check for account {}", accountId);
-
-        // Fetch latest 20 matches from OpenDota
-        List<RecentMatch> latest = client.getPlayerMatches(accountId, 20, 0, 7);
-        if (latest.isEmpty()) {
-            log.info("No matches returned from OpenDota for {}", accountId);
-            return;
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accounts", syncAccounts.size());
+        stats.put("cycles", cycles.sum());
+        stats.put("skippedCycles", skippedCycles.sum());
+        stats.put("running", cycleRunning.get());
+        stats.put("backfillingAccounts", backfills.size());
+        if (lastCycleAt != null) {
+            stats.put("lastCycleAt", lastCycleAt.toString());
+            stats.put("lastCycleMs", lastCycleMs);
+            stats.put("lastCycleNewMatches", lastCycleNewMatches);
         }
+        stats.put("syncedMatches", syncedMatches.sum());
+        stats.put("failedAccounts", failedAccounts.sum());
+        return stats;
+    }
 
-        // Load existing cached match list
-        List<RecentMatch> cached = cache.getRecentMatches(accountId, null);
-        if (cached == null) cached = new ArrayList<>();
-
-        // Find new match IDs not in cache
-        var cachedIds = cached.stream().map(RecentMatch::getMatchId).collect(Collectors.toSet());
-        List<RecentMatch> newMatches = latest.stream()
-                .filter(m -> !cachedIds.contains(m.getMatchId()))
-                .collect(Collectors.toList());
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
 
+    /** Returns the number of new matches stored. */
+    private int syncAccount(long accountId, Set<Integer> heroesSeen) {
+        SyncWatermark watermark = watermarks.computeIfAbsent(accountId, this::initialWatermark);
+        List<RecentMatch> newMatches = fetchNewMatches(accountId, watermark);
         if (newMatches.isEmpty()) {
-            log.info("No new matches for account {}", accountId);
-            return;
+            log.debug("No new matches for account {}", accountId);
+            return 0;
         }
-
         log.info("Found {} new matches for account {}", newMatches.size(), accountId);
 
-        // Merge new matches into cached list and save
-        List<RecentMatch> merged = new ArrayList<>(cached);
-        merged.addAll(newMatches);
-        merged = merged.stream()
-                .collect(Collectors.toMap(RecentMatch::getMatchId, m -> m, (a, b) -> a))
-                .values().stream()
-                .sorted(Comparator.comparingInt(RecentMatch::getStartTime).reversed())
-                .collect(Collectors.toList());
-        cache.saveRecentMatches(accountId, merged);
-
-        // Fetch details for new matches
+        // Fetch details for new matches; parse requests and fetches are all queued at once
+        Map<Long, MatchDetail> cachedDetails = cache.getMatchDetails(
+                newMatches.stream().map(RecentMatch::getMatchId).collect(Collectors.toList()), null);
+        Map<Long, CompletableFuture<MatchDetail>> pending = new LinkedHashMap<>();
         for (RecentMatch match : newMatches) {
-            try {
-                MatchDetail detail = cache.getMatchDetail(match.getMatchId(), null);
-                if (detail == null) {
-                    client.requestParse(match.getMatchId());
-                    detail = client.getMatchDetail(match.getMatchId());
-                    if (detail != null) {
-                        cache.saveMatchDetail(match.getMatchId(), detail);
-                    }
-                }
+            MatchDetail detail = cachedDetails.get(match.getMatchId());
+            if (detail == null) {
+                client.requestParseAsync(match.getMatchId(), RequestPriority.SYNC);
+                pending.put(match.getMatchId(), client.getMatchDetailAsync(match.getMatchId(), RequestPriority.SYNC));
+            } else {
+                ensureHeroImages(detail, heroesSeen);
+            }
+        }
+        Map<Long, MatchDetail> fetched = new LinkedHashMap<>();
+        pending.forEach((matchId, future) -> {
+            MatchDetail detail = future.join();
+            if (detail != null) {
+                fetched.put(matchId, detail);
+                ensureHeroImages(detail, heroesSeen);
+            }
+        });
+        cache.saveMatchDetails(fetched);
+
+        // Only move the watermark once the list holds the matches, so a failed write is retried next cycle
+        if (!cache.appendRecentMatches(accountId, newMatches)) {
+            failedAccounts.increment();
+            return 0;
+        }
+        replayStore.pin(accountId, newMatches);
+        RecentMatch newest = newMatches.get(0);
+        SyncWatermark advanced = new SyncWatermark(newest.getMatchId(), newest.getStartTime());
+        cache.saveSyncWatermark(accountId, advanced);
+        watermarks.put(accountId, advanced);
+        syncedMatches.add(newMatches.size());
+        return newMatches.size();
+    }
 
-                // Preload hero images
-                if (detail != null && detail.getPlayers() != null) {
-                    for (var p : detail.getPlayers()) {
-                        heroImages.ensureHeroImage(p.getHeroId());
-                    }
+    /**
+     * Matches past {@code watermark}, newest first. A page that is entirely new means there may be more
+     * below it, so the next page is fetched, up to {@link #MAX_PAGES}. Returns nothing if the watermark
+     * was not reached yet; the matches found are then kept as a {@link Backfill} for the next cycle. An empty
+     * page after a full one is taken as a failed fetch rather than the end of history, and also leaves a backfill
+     * that resumes at that page.
+     */
+    private List<RecentMatch> fetchNewMatches(long accountId, SyncWatermark watermark) {
+        Backfill backfill = backfills.remove(accountId);
+        // With a backfill pending, first collect the matches played since, down to the backfill's newest
+        SyncWatermark stopAt = backfill != null ? backfill.head() : watermark;
+        Map<Long, RecentMatch> found = new LinkedHashMap<>();
+        int offset = 0;
+        int previousSize = -1;
+        boolean complete = false;
+        boolean pageFailed = false;
+        for (int page = 0; page < MAX_PAGES && !complete; page++) {
+            List<RecentMatch> batch = client.getPlayerMatches(accountId, PAGE_SIZE, offset, 7,
+                    RequestPriority.SYNC);
+            if (batch.isEmpty() && previousSize == PAGE_SIZE) {
+                // The client answers a failed request with an empty list, so this is not proof that history ended
+                log.warn("Empty match page at offset {} for account {} after a full one, retrying next cycle",
+                        offset, accountId);
+                pageFailed = true;
+                break;
+            }
+            offset += PAGE_SIZE;
+            previousSize = batch.size();
+            boolean reachedStop = false;
+            for (RecentMatch match : batch) {
+                if (stopAt == null || stopAt.isBefore(match)) {
+                    found.putIfAbsent(match.getMatchId(), match);
+                } else {
+                    reachedStop = true;
                 }
+            }
+            if (reachedStop && backfill != null) {
+                // The backfill's matches have moved down by the number of newer ones; resume below them
+                offset = backfill.nextOffset() + found.size();
+                backfill.found().forEach(match -> found.putIfAbsent(match.getMatchId(), match));
+                backfill = null;
+                stopAt = watermark;
+                continue;
+            }
+            // Without a watermark the first page is the starting point
+            complete = reachedStop || stopAt == null || batch.size() < PAGE_SIZE;
+        }
+        if (backfill != null) {
+            if (complete) {
+                // History ended above the backfill's newest match; everything held is still past the watermark
+                backfill.found().forEach(match -> found.putIfAbsent(match.getMatchId(), match));
+            } else if (pageFailed) {
+                // Keep the backfill as it was; the newer matches seen this time are fetched again next cycle
+                backfills.put(accountId, backfill);
+                return List.of();
+            } else {
+                // So many new matches that the backfill could not be lined up again; restart from the top
+                log.warn("Dropping match backfill for account {}, {} matches arrived since the last cycle",
+                        accountId, found.size());
+            }
+        }
+        if (!complete) {
+            backfills.put(accountId, new Backfill(newestFirst(found.values()), offset));
+            log.warn("Account {} has at least {} matches past its watermark, holding them and continuing from offset {} next cycle",
+                    accountId, found.size(), offset);
+            return List.of();
+        }
+        return newestFirst(found.values());
+    }
+
+    private static List<RecentMatch> newestFirst(Collection<RecentMatch> matches) {
+        return matches.stream()
+                .sorted(Comparator.comparingInt(RecentMatch::getStartTime).reversed()
+                        .thenComparing(Comparator.comparingLong(RecentMatch::getMatchId).reversed()))
+                .collect(Collectors.toList());
+    }
+
+    /** For an account synced before watermarks existed, start from the newest match in its stored list. */
+    private SyncWatermark initialWatermark(long accountId) {
+        List<RecentMatch> cached = cache.getRecentMatches(accountId, null);
+        if (cached == null || cached.isEmpty()) return null;
+        RecentMatch newest = cached.stream()
+                .max(Comparator.comparingInt(RecentMatch::getStartTime).thenComparingLong(RecentMatch::getMatchId))
+                .get();
+        return new SyncWatermark(newest.getMatchId(), newest.getStartTime());
+    }
 
-                log.info("Synced match {} for account {}", match.getMatchId(), accountId);
-            } catch (Exception e) {
-                log.warn("Failed to sync match {} for account {}", match.getMatchId(), accountId, e);
+    private void ensureHeroImages(MatchDetail detail, Set<Integer> heroesSeen) {
+        if (detail.getPlayers() == null) return;
+        for (var p : detail.getPlayers()) {
+            if (heroesSeen.add(p.getHeroId())) {
+                heroImages.ensureHeroImage(p.getHeroId());
             }
         }
     }
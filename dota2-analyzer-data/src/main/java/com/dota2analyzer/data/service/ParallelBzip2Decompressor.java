@@ -0,0 +1,292 @@
+package com.dota2analyzer.data.service;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Decompresses a bzip2 stream on several cores while it is still arriving.
+ *
+ * <p>bzip2 compresses in independent blocks (up to 900 KB of input each) that start with a 48-bit magic
+ * number at an arbitrary bit offset. The reader scans the incoming bits for block and end-of-stream
+ * markers, wraps each complete block in a minimal one-block stream (header, block, end marker, CRC) and
+ * hands it to the pool; finished blocks are written to the target channel in order. At most
+ * {@code maxBlocksInFlight} blocks are buffered, which bounds memory to a few MB per block.
+ *
+ * <p>The block magic can in principle also occur inside compressed data. A false split makes that block
+ * fail its CRC and surfaces as an {@link IOException}, the same as a corrupt download; callers fall back to
+ * sequential decompression.
+ */
+public class ParallelBzip2Decompressor implements AutoCloseable {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    private static final int READ_CHUNK = 1024 * 1024;
+    private static final int WRITE_BUFFER = 4 * 1024 * 1024;
+
+    private final ExecutorService pool;
+    private final int maxBlocksInFlight;
+    private final int readChunk;
+
+    /**
+     * @param threads decompression threads; 0 or less for one per available core
+     */
+    public ParallelBzip2Decompressor(int threads) {
+        this(threads, READ_CHUNK);
+    }
+
+    /** With {@code readChunk} bytes per scan, so tests can put chunk boundaries anywhere. */
+    ParallelBzip2Decompressor(int threads, int readChunk) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = Executors.newFixedThreadPool(size,
+                Thread.ofPlatform().name("bzip2-", 0).daemon(true).factory());
+        this.maxBlocksInFlight = size * 2;
+        this.readChunk = Math.max(1, readChunk);
+    }
+
+    /**
+     * Decompress {@code in} into {@code target}, replacing it. Returns the number of bytes written.
+     *
+     * @throws IOException if the stream is not bzip2, is truncated, or a block fails to decode
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting for a block
+     */
+    public long decompress(InputStream in, Path target) throws IOException {
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OrderedWriter writer = new OrderedWriter(out);
+            BlockScanner scanner = new BlockScanner(block -> {
+                while (pending.size() >= maxBlocksInFlight) {
+                    writer.write(await(pending.poll()));
+                }
+                pending.add(pool.submit(() -> decodeBlock(block)));
+            });
+
+            byte[] chunk = new byte[readChunk];
+            int read;
+            while ((read = in.readNBytes(chunk, 0, chunk.length)) > 0) {
+                scanner.feed(chunk, read);
+            }
+            scanner.finish();
+
+            while (!pending.isEmpty()) {
+                writer.write(await(pending.poll()));
+            }
+            writer.flush();
+            return writer.written;
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while decompressing");
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Block decompression failed", e.getCause());
+        }
+    }
+
+    private static byte[] decodeBlock(byte[] stream) throws IOException {
+        try (BZip2CompressorInputStream bz2 = new BZip2CompressorInputStream(new ByteArrayInputStream(stream))) {
+            return bz2.readAllBytes();
+        }
+    }
+
+    private interface BlockSink {
+        void accept(byte[] singleBlockStream) throws IOException;
+    }
+
+    /** Gathers decoded blocks into a large direct buffer so the channel sees few, large writes. */
+    private static final class OrderedWriter {
+        private final FileChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+        private long written;
+
+        OrderedWriter(FileChannel out) {
+            this.out = out;
+        }
+
+        void write(byte[] data) throws IOException {
+            int offset = 0;
+            while (offset < data.length) {
+                int n = Math.min(buffer.remaining(), data.length - offset);
+                buffer.put(data, offset, n);
+                offset += n;
+                if (!buffer.hasRemaining()) flush();
+            }
+            written += data.length;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Finds block boundaries in the compressed bit stream. Only the bytes of the block currently being
+     * read are retained; everything before it is discarded as soon as the block is handed off.
+     */
+    private static final class BlockScanner {
+        private final BlockSink sink;
+        private byte[] buf = new byte[2 * READ_CHUNK];
+        private long base;          // absolute byte offset of buf[0]
+        private int length;
+        private long bitPos;        // absolute index of the next bit to scan
+        private long window;
+        private long blockStart = -1;
+        private boolean headerChecked;
+        private boolean sawEnd;
+
+        BlockScanner(BlockSink sink) {
+            this.sink = sink;
+        }
+
+        void feed(byte[] chunk, int n) throws IOException {
+            if (length + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + n));
+            }
+            System.arraycopy(chunk, 0, buf, length, n);
+            length += n;
+            if (!headerChecked) {
+                if (length < 4) return;
+                if (buf[0] != 'B' || buf[1] != 'Z' || buf[2] != 'h' || buf[3] < '1' || buf[3] > '9') {
+                    throw new IOException("Not a bzip2 stream");
+                }
+                headerChecked = true;
+            }
+
+            int end = length;
+            for (int i = (int) (bitPos / 8 - base); i < end; i++) {
+                int b = buf[i] & 0xff;
+                for (int shift = 7; shift >= 0; shift--) {
+                    window = (window << 1) | ((b >>> shift) & 1);
+                    bitPos++;
+                    long candidate = window & MAGIC_MASK;
+                    if (candidate == BLOCK_MAGIC || candidate == EOS_MAGIC) {
+                        onMarker(bitPos - 48, candidate == BLOCK_MAGIC);
+                    }
+                }
+            }
+            compact();
+        }
+
+        void finish() throws IOException {
+            if (!headerChecked) throw new IOException("Not a bzip2 stream");
+            if (blockStart >= 0 || !sawEnd) throw new IOException("Truncated bzip2 stream");
+        }
+
+        private void onMarker(long markerBit, boolean isBlock) throws IOException {
+            if (blockStart >= 0) {
+                sink.accept(singleBlockStream(blockStart, markerBit));
+            }
+            blockStart = isBlock ? markerBit : -1;
+            if (!isBlock) sawEnd = true;
+        }
+
+        /** Drops bytes no open block can need any more; the last 6 bytes stay so a marker may straddle chunks. */
+        private void compact() {
+            long keepFrom = blockStart >= 0 ? blockStart / 8 : Math.max(base, bitPos / 8 - 6);
+            int drop = (int) (keepFrom - base);
+            if (drop <= 0) return;
+            System.arraycopy(buf, drop, buf, 0, length - drop);
+            length -= drop;
+            base += drop;
+        }
+
+        /** Wraps bits {@code [from, to)} (block magic to the next marker) as a complete one-block bzip2 stream. */
+        private byte[] singleBlockStream(long from, long to) {
+            long bits = to - from;
+            BitWriter w = new BitWriter(4 + (int) ((bits + 7) / 8) + 11);
+            w.put(8, 'B');
+            w.put(8, 'Z');
+            w.put(8, 'h');
+            w.put(8, '9');
+            copyBits(w, from, bits);
+            w.put(24, EOS_MAGIC >>> 24);
+            w.put(24, EOS_MAGIC & 0xffffff);
+            // With one block the stream CRC equals the block CRC, which follows the block magic
+            w.put(32, readBits(from + 48, 32));
+            return w.toByteArray();
+        }
+
+        private void copyBits(BitWriter w, long from, long bits) {
+            int offset = (int) (from / 8 - base);
+            int shift = (int) (from % 8);
+            long whole = bits / 8;
+            for (long i = 0; i < whole; i++) {
+                int hi = buf[offset] & 0xff;
+                int lo = shift == 0 ? 0 : buf[offset + 1] & 0xff;
+                w.put(8, ((hi << shift) | (lo >>> (8 - shift))) & 0xff);
+                offset++;
+            }
+            int rest = (int) (bits % 8);
+            if (rest > 0) {
+                w.put(rest, readBits(from + whole * 8, rest));
+            }
+        }
+
+        private long readBits(long from, int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                long bit = from + i;
+                int b = buf[(int) (bit / 8 - base)] & 0xff;
+                value = (value << 1) | ((b >>> (7 - (bit % 8))) & 1);
+            }
+            return value;
+        }
+    }
+
+    private static final class BitWriter {
+        private final byte[] out;
+        private int bytePos;
+        private long acc;
+        private int accBits;
+
+        BitWriter(int capacity) {
+            this.out = new byte[capacity];
+        }
+
+        void put(int count, long value) {
+            acc = (acc << count) | (value & ((1L << count) - 1));
+            accBits += count;
+            while (accBits >= 8) {
+                accBits -= 8;
+                out[bytePos++] = (byte) (acc >>> accBits);
+            }
+        }
+
+        byte[] toByteArray() {
+            if (accBits > 0) {
+                out[bytePos++] = (byte) (acc << (8 - accBits));
+                accBits = 0;
+            }
+            return Arrays.copyOf(out, bytePos);
+        }
+    }
+}
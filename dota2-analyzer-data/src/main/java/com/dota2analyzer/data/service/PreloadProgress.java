@@ -0,0 +1,142 @@
+package com.dota2analyzer.data.service;
+
+import com.dota2analyzer.data.dto.PreloadMatchRow;
+import com.dota2analyzer.data.dto.PreloadStatus;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Live progress of one preload run, written by the preload workers and read by status requests.
+ *
+ * <p>Counters, message and row count live in one immutable {@link State} swapped atomically, so a reader
+ * gets a consistent view with a single volatile read and never blocks a writer. Rows go to an append-only
+ * buffer; the published row count only covers rows already written, so readers copy that prefix without
+ * locking. Every change bumps the version, which long-polling clients use to wait for the next change and
+ * to fetch only the rows they don't have yet.
+ */
+public class PreloadProgress {
+
+    private record State(long version, int total, int completed, int failed, int rowCount, boolean running,
+                         String message, OffsetDateTime lastUpdated) {
+
+        State next(int total, int completed, int failed, int rowCount, boolean running, String message) {
+            return new State(version + 1, total, completed, failed, rowCount, running, message, OffsetDateTime.now());
+        }
+    }
+
+    private final long accountId;
+    private final long startVersion;
+    private final AtomicReference<State> state;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile PreloadMatchRow[] rows = new PreloadMatchRow[16];
+    private final ConcurrentLinkedQueue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+
+    /** An idle account that has never been preloaded. */
+    public PreloadProgress(long accountId) {
+        this(accountId, 0, 0, false, "未开始");
+    }
+
+    /**
+     * @param startVersion version of the first state; continue from the previous run's so clients holding
+     *                     its version see a change
+     */
+    public PreloadProgress(long accountId, long startVersion, int total, boolean running, String message) {
+        this.accountId = accountId;
+        this.startVersion = startVersion;
+        this.state = new AtomicReference<>(
+                new State(startVersion, total, 0, 0, 0, running, message, OffsetDateTime.now()));
+    }
+
+    public long getAccountId() { return accountId; }
+    public long getVersion() { return state.get().version(); }
+    public boolean isRunning() { return state.get().running(); }
+    public int getFailed() { return state.get().failed(); }
+
+    public void setTotal(int total, String message) {
+        update(s -> s.next(total, s.completed(), s.failed(), s.rowCount(), s.running(), message));
+    }
+
+    /** Count a finished match and publish its row ({@code row} may be null when there is nothing to show). */
+    public void complete(PreloadMatchRow row) {
+        appendLock.lock();
+        try {
+            int index = state.get().rowCount();
+            if (row != null) {
+                PreloadMatchRow[] buffer = rows;
+                if (index == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                buffer[index] = row;
+                rows = buffer;
+            }
+            // Publishing the count after the row is written is what lets readers skip the lock
+            int rowCount = row != null ? index + 1 : index;
+            update(s -> s.next(s.total(), s.completed() + 1, s.failed(), rowCount, s.running(),
+                    "已完成 " + (s.completed() + 1) + "/" + s.total()));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void fail() {
+        update(s -> s.next(s.total(), s.completed(), s.failed() + 1, s.rowCount(), s.running(), s.message()));
+    }
+
+    public void finish(String message) {
+        update(s -> s.next(s.total(), s.completed(), s.failed(), s.rowCount(), false, message));
+    }
+
+    /**
+     * A consistent copy of the current state. A client that has seen this run ({@code since} at least its
+     * first version) and holds {@code after} rows only gets the rows after those; {@code rowOffset} in the
+     * result says where the returned rows start.
+     */
+    public PreloadStatus snapshot(long since, int after) {
+        State s = state.get();
+        PreloadMatchRow[] buffer = rows;
+        int offset = since >= startVersion ? Math.max(0, Math.min(after, s.rowCount())) : 0;
+
+        PreloadStatus status = new PreloadStatus(accountId);
+        status.setVersion(s.version());
+        status.setTotal(s.total());
+        status.setCompleted(s.completed());
+        status.setFailed(s.failed());
+        status.setRunning(s.running());
+        status.setMessage(s.message());
+        status.setLastUpdated(s.lastUpdated());
+        status.setRowOffset(offset);
+        status.setMatches(List.of(Arrays.copyOfRange(buffer, offset, s.rowCount())));
+        return status;
+    }
+
+    /**
+     * Completes once the version is past {@code since}, the run is not running, or {@code waitMs} elapses,
+     * whichever comes first.
+     */
+    public CompletableFuture<Void> awaitChange(long since, long waitMs) {
+        CompletableFuture<Void> changed = new CompletableFuture<>();
+        Runnable waiter = () -> changed.complete(null);
+        waiters.add(waiter);
+        // Checked after registering so a change in between still wakes us
+        State s = state.get();
+        if (waitMs <= 0 || s.version() > since || !s.running()) {
+            changed.complete(null);
+        }
+        changed.completeOnTimeout(null, waitMs, TimeUnit.MILLISECONDS);
+        changed.whenComplete((v, e) -> waiters.remove(waiter));
+        return changed;
+    }
+
+    private void update(UnaryOperator<State> change) {
+        state.updateAndGet(change);
+        waiters.forEach(Runnable::run);
+    }
+}
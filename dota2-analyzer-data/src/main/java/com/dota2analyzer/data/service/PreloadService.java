@@ -7,132 +7,211 @@ import com.dota2analyzer.core.model.opendota.PlayerDetail;
 import com.dota2analyzer.core.model.opendota.RecentMatch;
 import com.dota2analyzer.core.service.MatchCache;
 import com.dota2analyzer.core.service.OpenDotaClient;
+import com.dota2analyzer.core.service.RequestPriority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 public class PreloadService {
 
     private static final Logger log = LoggerFactory.getLogger(PreloadService.class);
+    private static final int SAVE_BATCH_SIZE = 10;
+    private static final long MAX_WAIT_MS = 25_000;
 
     private final OpenDotaClient client;
     private final MatchCache cache;
     private final HeroImageCache heroImages;
-    private final ConcurrentHashMap<Long, PreloadStatus> statusMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, PreloadProgress> progressMap = new ConcurrentHashMap<>();
     private final ReentrantLock gate = new ReentrantLock();
+    private final int maxInFlight;
+    private final ExecutorService imageExecutor;
 
     public PreloadService(OpenDotaClient client, MatchCache cache, HeroImageCache heroImages) {
+        this(client, cache, heroImages, 8, 4);
+    }
+
+    /**
+     * @param maxInFlight      match detail fetches queued upstream at once per preload; the scheduler sets the pace
+     * @param imageConcurrency hero image downloads running at once
+     */
+    public PreloadService(OpenDotaClient client, MatchCache cache, HeroImageCache heroImages,
+                          int maxInFlight, int imageConcurrency) {
         this.client = client;
         this.cache = cache;
         this.heroImages = heroImages;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.imageExecutor = Executors.newFixedThreadPool(Math.max(1, imageConcurrency),
+                Thread.ofVirtual().name("hero-image-", 0).factory());
     }
 
     public PreloadStatus getStatus(long accountId) {
-        return statusMap.computeIfAbsent(accountId, id -> new PreloadStatus(id));
+        return progressOf(accountId).snapshot(-1, 0);
+    }
+
+    /**
+     * Long-poll for progress: completes with a snapshot as soon as the run changes past version {@code since}
+     * (or immediately if it already has, or is not running), and after at most {@code waitMs} otherwise. Only
+     * rows after the first {@code after} are included when the caller has already seen this run.
+     */
+    public CompletableFuture<PreloadStatus> awaitStatus(long accountId, long since, int after, long waitMs) {
+        PreloadProgress progress = progressOf(accountId);
+        return progress.awaitChange(since, Math.min(waitMs, MAX_WAIT_MS))
+                .thenApply(ignored -> progressOf(accountId).snapshot(since, after));
     }
 
     public PreloadStatus start(long accountId, int count) {
         gate.lock();
         try {
-            PreloadStatus status = statusMap.computeIfAbsent(accountId, id -> new PreloadStatus(id));
-            if (status.isRunning()) {
-                return status;
+            PreloadProgress previous = progressOf(accountId);
+            if (previous.isRunning()) {
+                return previous.snapshot(-1, 0);
             }
 
-            status.setRunning(true);
-            status.setTotal(count);
-            status.setCompleted(0);
-            status.setFailed(0);
-            status.setLastUpdated(OffsetDateTime.now());
-            status.setMessage("正在拉取对局列表");
-            status.setMatches(new ArrayList<>());
-
-            Thread.startVirtualThread(() -> runPreload(status, count));
-            return status;
+            PreloadProgress progress = new PreloadProgress(accountId, previous.getVersion() + 1, count, true,
+                    "正在拉取对局列表");
+            progressMap.put(accountId, progress);
+            Thread.startVirtualThread(() -> runPreload(progress, count));
+            return progress.snapshot(-1, 0);
         } finally {
             gate.unlock();
         }
     }
 
-    private void runPreload(PreloadStatus status, int count) {
+    private PreloadProgress progressOf(long accountId) {
+        return progressMap.computeIfAbsent(accountId, PreloadProgress::new);
+    }
+
+    /**
+     * Cached details are turned into rows in one pass; only the misses go upstream, at most
+     * {@code maxInFlight} at a time so a large preload doesn't flood the scheduler queue. Fetched details are
+     * handled on this thread as they complete, and hero images download on the image pool meanwhile.
+     */
+    private void runPreload(PreloadProgress progress, int count) {
+        long start = System.nanoTime();
+        Set<Integer> requestedImages = new HashSet<>();
+        List<CompletableFuture<?>> imageTasks = new ArrayList<>();
         try {
-            List<RecentMatch> matches = fetchMatches(status.getAccountId(), count);
+            List<RecentMatch> matches = fetchMatches(progress.getAccountId(), count);
             if (!matches.isEmpty()) {
-                cache.saveRecentMatches(status.getAccountId(), matches);
+                cache.saveRecentMatches(progress.getAccountId(), matches);
             }
-            status.setTotal(matches.size());
-            status.setMessage("开始拉取对局详情");
+            progress.setTotal(matches.size(), "开始拉取对局详情");
+
+            Duration matchTtl = cache.isPermanentAccount(progress.getAccountId()) ? null : Duration.ofDays(7);
+            Map<Long, MatchDetail> cached = cache.getMatchDetails(
+                    matches.stream().map(RecentMatch::getMatchId).collect(Collectors.toList()), matchTtl);
 
+            ArrayDeque<RecentMatch> misses = new ArrayDeque<>();
             for (RecentMatch match : matches) {
-                try {
-                    Duration matchTtl = cache.isPermanentAccount(status.getAccountId()) ? null : Duration.ofDays(7);
-                    MatchDetail detail = cache.getMatchDetail(match.getMatchId(), matchTtl);
-                    if (detail == null) {
-                        detail = client.getMatchDetail(match.getMatchId());
-                        if (detail != null) {
-                            cache.saveMatchDetail(match.getMatchId(), detail);
-                        }
-                    }
+                MatchDetail detail = cached.get(match.getMatchId());
+                if (detail == null) {
+                    misses.add(match);
+                } else {
+                    progress.complete(buildRow(match, detail, requestedImages, imageTasks));
+                }
+            }
 
-                    if (detail != null && detail.getPlayers() != null) {
-                        List<Integer> radiant = new ArrayList<>();
-                        List<Integer> dire = new ArrayList<>();
-                        for (PlayerDetail p : detail.getPlayers()) {
-                            if (p.getPlayerSlot() < 128) radiant.add(p.getHeroId());
-                            else dire.add(p.getHeroId());
-                        }
+            fetchMisses(progress, misses, requestedImages, imageTasks);
 
-                        PreloadMatchRow row = new PreloadMatchRow();
-                        row.setMatchId(match.getMatchId());
-                        row.setRadiantWin(detail.isRadiantWin());
-                        row.setDuration(detail.getDuration());
-                        row.setStartTime(match.getStartTime());
-                        row.setRadiantHeroes(radiant);
-                        row.setDireHeroes(dire);
-                        status.getMatches().add(row);
-
-                        for (int heroId : radiant) {
-                            heroImages.ensureHeroImage(heroId);
-                        }
-                        for (int heroId : dire) {
-                            heroImages.ensureHeroImage(heroId);
-                        }
-                    }
+            CompletableFuture.allOf(imageTasks.toArray(new CompletableFuture[0])).join();
+            progress.finish("完成");
+            log.info("Preload AccountId={} done in {}ms: {} matches, {} cached, {} failed, {} hero images",
+                    progress.getAccountId(), (System.nanoTime() - start) / 1_000_000, matches.size(),
+                    cached.size(), progress.getFailed(), requestedImages.size());
+        } catch (Exception ex) {
+            log.error("Preload failed AccountId={}", progress.getAccountId(), ex);
+            progress.finish("失败");
+        } finally {
+            if (progress.isRunning()) {
+                progress.finish("失败");
+            }
+        }
+    }
 
-                    status.setCompleted(status.getCompleted() + 1);
-                } catch (Exception ex) {
-                    status.setFailed(status.getFailed() + 1);
-                    log.warn("Preload match failed {}", match.getMatchId(), ex);
-                }
+    private record Fetched(RecentMatch match, MatchDetail detail) {}
 
-                status.setLastUpdated(OffsetDateTime.now());
-                status.setMessage("已完成 " + status.getCompleted() + "/" + status.getTotal());
+    private void fetchMisses(PreloadProgress progress, ArrayDeque<RecentMatch> misses, Set<Integer> requestedImages,
+                             List<CompletableFuture<?>> imageTasks) {
+        if (misses.isEmpty()) return;
+        LinkedBlockingQueue<Fetched> done = new LinkedBlockingQueue<>();
+        Map<Long, MatchDetail> pendingSaves = new LinkedHashMap<>();
+        int inFlight = 0;
+        try {
+            while (inFlight > 0 || !misses.isEmpty()) {
+                while (inFlight < maxInFlight && !misses.isEmpty()) {
+                    RecentMatch match = misses.poll();
+                    client.getMatchDetailAsync(match.getMatchId(), RequestPriority.PRELOAD)
+                            .whenComplete((detail, error) -> done.add(new Fetched(match, detail)));
+                    inFlight++;
+                }
 
+                Fetched fetched = done.take();
+                inFlight--;
                 try {
-                    Thread.sleep(1200);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+                    if (fetched.detail() == null) {
+                        progress.fail();
+                    } else {
+                        pendingSaves.put(fetched.match().getMatchId(), fetched.detail());
+                        if (pendingSaves.size() >= SAVE_BATCH_SIZE) {
+                            cache.saveMatchDetails(pendingSaves);
+                            pendingSaves.clear();
+                        }
+                        progress.complete(buildRow(fetched.match(), fetched.detail(), requestedImages, imageTasks));
+                    }
+                } catch (Exception ex) {
+                    progress.fail();
+                    log.warn("Preload match failed {}", fetched.match().getMatchId(), ex);
                 }
             }
-
-            status.setMessage("完成");
-        } catch (Exception ex) {
-            log.error("Preload failed AccountId={}", status.getAccountId(), ex);
-            status.setMessage("失败");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
-            status.setRunning(false);
-            status.setLastUpdated(OffsetDateTime.now());
+            if (!pendingSaves.isEmpty()) {
+                cache.saveMatchDetails(pendingSaves);
+            }
         }
     }
 
+    /** The row for a match, queueing downloads for heroes not seen earlier in the run; null without players. */
+    private PreloadMatchRow buildRow(RecentMatch match, MatchDetail detail, Set<Integer> requestedImages,
+                                     List<CompletableFuture<?>> imageTasks) {
+        if (detail.getPlayers() == null) return null;
+        List<Integer> radiant = new ArrayList<>();
+        List<Integer> dire = new ArrayList<>();
+        for (PlayerDetail p : detail.getPlayers()) {
+            if (p.getPlayerSlot() < 128) radiant.add(p.getHeroId());
+            else dire.add(p.getHeroId());
+            if (requestedImages.add(p.getHeroId())) {
+                int heroId = p.getHeroId();
+                imageTasks.add(CompletableFuture.runAsync(() -> heroImages.ensureHeroImage(heroId), imageExecutor));
+            }
+        }
+
+        PreloadMatchRow row = new PreloadMatchRow();
+        row.setMatchId(match.getMatchId());
+        row.setRadiantWin(detail.isRadiantWin());
+        row.setDuration(detail.getDuration());
+        row.setStartTime(match.getStartTime());
+        row.setRadiantHeroes(radiant);
+        row.setDireHeroes(dire);
+        return row;
+    }
+
     private List<RecentMatch> fetchMatches(long accountId, int count) {
         List<RecentMatch> results = new ArrayList<>();
         int pageSize = 100;
@@ -140,7 +219,7 @@ public class PreloadService {
 
         while (results.size() < count) {
             int take = Math.min(pageSize, count - results.size());
-            List<RecentMatch> batch = client.getPlayerMatches(accountId, take, offset, 7);
+            List<RecentMatch> batch = client.getPlayerMatches(accountId, take, offset, 7, RequestPriority.PRELOAD);
             if (batch.isEmpty()) break;
             results.addAll(batch);
             offset += batch.size();
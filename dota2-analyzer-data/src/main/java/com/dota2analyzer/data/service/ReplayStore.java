@@ -0,0 +1,292 @@
+package com.dota2analyzer.data.service;
+
+import com.dota2analyzer.core.model.opendota.RecentMatch;
+import com.dota2analyzer.core.service.MatchCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the replay directory under a byte quota by evicting the least recently used matches.
+ *
+ * <p>A match owns {@code {matchId}.dem} plus the analysis service's {@code {matchId}[.profile].demparse}
+ * caches; they are sized and evicted together. The index lives in memory, so quota checks after a download
+ * are a counter comparison; the directory is only listed at startup and by {@link #reconcile()}, which picks
+ * up parse caches written by the other service and files removed behind our back. Access time is the last
+ * time this service served or downloaded the replay, or the newest file time seen on disk, whichever is later.
+ * Replays in the match history of permanent accounts are never evicted; that set is loaded once, reloaded by
+ * {@link #reconcile()} and extended by {@link #pin} as the sync stores new matches.
+ */
+public class ReplayStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayStore.class);
+
+    private static final class Entry {
+        volatile long bytes;
+        volatile long lastAccessMs;
+        // File names seen for the match, so record() and evict() need not list the directory
+        volatile Set<String> files = Set.of();
+
+        Entry(long bytes, long lastAccessMs) {
+            this.bytes = bytes;
+            this.lastAccessMs = lastAccessMs;
+        }
+    }
+
+    private final Path dir;
+    private final long quotaBytes;
+    private final Duration maxAge;
+    private final MatchCache matchCache;
+    private final Set<Long> pinnedAccounts;
+
+    private final ConcurrentHashMap<Long, Entry> index = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private volatile Set<Long> pinned;
+    private volatile int pinnedCount;
+
+    /**
+     * @param quotaBytes     total size the directory may use; 0 or less for no quota
+     * @param maxAge         matches not accessed for this long are evicted regardless of quota; null to keep them
+     * @param pinnedAccounts accounts whose match history is never evicted
+     */
+    public ReplayStore(Path dir, long quotaBytes, Duration maxAge, MatchCache matchCache, Set<Long> pinnedAccounts) {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        this.maxAge = maxAge;
+        this.matchCache = matchCache;
+        this.pinnedAccounts = pinnedAccounts;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            log.warn("Failed to create replay directory", e);
+        }
+        rebuildIndex();
+        log.info("Replay store {}: {} matches, {}MB of {}MB quota", dir, index.size(), usedBytes.get() >> 20,
+                quotaBytes > 0 ? quotaBytes >> 20 : "unlimited");
+    }
+
+    public Path getDir() { return dir; }
+
+    /** Mark a match as used now so it moves to the back of the eviction order. */
+    public void touch(long matchId) {
+        Entry entry = index.get(matchId);
+        if (entry != null) {
+            entry.lastAccessMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Account for files just written for {@code matchId}, then evict down to the quota if needed. The files
+     * are measured under the rescan's lock and only the difference to the index is applied, so a rescan
+     * that ran before or after this neither drops nor double-counts them.
+     */
+    public void record(long matchId) {
+        evictionLock.lock();
+        try {
+            Entry entry = index.computeIfAbsent(matchId, id -> new Entry(0, 0));
+            Set<String> names = new HashSet<>(entry.files);
+            names.add(matchId + ".dem");
+            Set<String> present = new HashSet<>();
+            long bytes = 0;
+            for (String name : names) {
+                try {
+                    bytes += Files.size(dir.resolve(name));
+                    present.add(name);
+                } catch (IOException ignored) {
+                    // not written, or deleted meanwhile
+                }
+            }
+            usedBytes.addAndGet(bytes - entry.bytes);
+            entry.bytes = bytes;
+            entry.files = present;
+            entry.lastAccessMs = System.currentTimeMillis();
+        } finally {
+            evictionLock.unlock();
+        }
+        if (quotaBytes > 0 && usedBytes.get() > quotaBytes) {
+            enforce(matchId);
+        }
+    }
+
+    /** Rescan the directory and apply the quota and age limit. */
+    @Scheduled(fixedDelay = 15 * 60 * 1000, initialDelay = 60 * 1000)
+    public void reconcile() {
+        // Read the pinned accounts' match lists before taking the lock that record() waits on
+        pinned = loadPinned();
+        evictionLock.lock();
+        try {
+            rebuildIndex();
+            enforce(-1);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Protect newly stored matches of {@code accountId} from eviction, if it is a permanent account. Called
+     * by the sync after it appends them to the account's match list.
+     */
+    public void pin(long accountId, Collection<RecentMatch> matches) {
+        Set<Long> current = pinned;
+        if (current == null || !pinnedAccounts.contains(accountId)) return;
+        matches.forEach(m -> current.add(m.getMatchId()));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("matches", index.size());
+        stats.put("usedBytes", usedBytes.get());
+        stats.put("quotaBytes", quotaBytes);
+        if (quotaBytes > 0) {
+            stats.put("usedPercent", Math.round(usedBytes.get() * 1000.0 / quotaBytes) / 10.0);
+        }
+        stats.put("pinned", pinnedCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("evictedBytes", evictedBytes.sum());
+        return stats;
+    }
+
+    /**
+     * Evict expired matches, then least recently used ones until under quota. {@code protectedMatchId} (the
+     * replay just downloaded) is kept even if it alone exceeds the quota.
+     */
+    private void enforce(long protectedMatchId) {
+        if (!evictionLock.tryLock()) return; // another thread is already evicting
+        try {
+            long now = System.currentTimeMillis();
+            long expiredBefore = maxAge != null ? now - maxAge.toMillis() : Long.MIN_VALUE;
+            boolean overQuota = quotaBytes > 0 && usedBytes.get() > quotaBytes;
+            boolean anyExpired = index.values().stream().anyMatch(e -> e.lastAccessMs < expiredBefore);
+            if (!overQuota && !anyExpired) return;
+
+            Set<Long> pinned = this.pinned;
+            if (pinned == null) {
+                pinned = loadPinned();
+                this.pinned = pinned;
+            }
+            pinnedCount = (int) pinned.stream().filter(index::containsKey).count();
+            List<Map.Entry<Long, Entry>> candidates = new ArrayList<>(index.entrySet());
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccessMs));
+            for (Map.Entry<Long, Entry> candidate : candidates) {
+                long matchId = candidate.getKey();
+                Entry entry = candidate.getValue();
+                boolean expired = entry.lastAccessMs < expiredBefore;
+                boolean needSpace = quotaBytes > 0 && usedBytes.get() > quotaBytes;
+                // Candidates are oldest first, so once one is neither expired nor needed for space none are
+                if (!expired && !needSpace) break;
+                if (matchId == protectedMatchId || pinned.contains(matchId)) continue;
+                evict(matchId, entry, expired ? "expired" : "over quota");
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evict(long matchId, Entry entry, String reason) {
+        if (!index.remove(matchId, entry)) return;
+        Set<String> names = new HashSet<>(entry.files);
+        names.add(matchId + ".dem");
+        long freed = 0;
+        for (String name : names) {
+            Path file = dir.resolve(name);
+            try {
+                long size = Files.size(file);
+                Files.delete(file);
+                freed += size;
+            } catch (NoSuchFileException ignored) {
+                // never written, or already gone
+            } catch (IOException e) {
+                log.warn("Failed to delete replay file {}", file, e);
+            }
+        }
+        usedBytes.addAndGet(-entry.bytes);
+        evictions.increment();
+        evictedBytes.add(freed);
+        log.info("Evicted replay {} ({}, {}KB)", matchId, reason, freed / 1024);
+    }
+
+    private Set<Long> loadPinned() {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        if (matchCache != null) {
+            for (long accountId : pinnedAccounts) {
+                List<RecentMatch> matches = matchCache.getRecentMatches(accountId, null);
+                if (matches != null) {
+                    matches.forEach(m -> ids.add(m.getMatchId()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void rebuildIndex() {
+        Map<Long, Entry> scanned = new HashMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                long matchId = matchIdOf(file);
+                if (matchId < 0) return;
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    long time = Math.max(attrs.lastModifiedTime().toMillis(), attrs.lastAccessTime().toMillis());
+                    Entry entry = scanned.computeIfAbsent(matchId, id -> new Entry(0, 0));
+                    entry.bytes += attrs.size();
+                    entry.files = concat(entry.files, file.getFileName().toString());
+                    entry.lastAccessMs = Math.max(entry.lastAccessMs, time);
+                } catch (IOException ignored) {
+                    // deleted while listing
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to list replay directory {}", dir, e);
+            return;
+        }
+
+        // Update known entries in place so a concurrent touch() keeps working on the live object
+        long total = 0;
+        for (Map.Entry<Long, Entry> e : scanned.entrySet()) {
+            Entry fresh = e.getValue();
+            Entry known = index.putIfAbsent(e.getKey(), fresh);
+            if (known != null) {
+                known.bytes = fresh.bytes;
+                known.files = fresh.files;
+                known.lastAccessMs = Math.max(known.lastAccessMs, fresh.lastAccessMs);
+            }
+            total += fresh.bytes;
+        }
+        index.keySet().retainAll(scanned.keySet());
+        usedBytes.set(total);
+    }
+
+    private static Set<String> concat(Set<String> names, String name) {
+        Set<String> all = new HashSet<>(names);
+        all.add(name);
+        return all;
+    }
+
+    /** Match id of a stored file, or -1 for anything else (including .part and .tmp downloads). */
+    private static long matchIdOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(".dem") && !name.endsWith(".demparse")) return -1;
+        int dot = name.indexOf('.');
+        try {
+            return Long.parseLong(name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
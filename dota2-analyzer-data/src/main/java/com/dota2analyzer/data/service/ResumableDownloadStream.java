@@ -0,0 +1,240 @@
+package com.dota2analyzer.data.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * Reads a remote file while saving it to {@code partFile}, surviving dropped connections.
+ *
+ * <p>Bytes already in {@code partFile} (from an earlier, interrupted download) are served first, then the
+ * rest is requested with {@code Range: bytes=N-} and appended to the file as it is read. If the connection
+ * fails mid-body the stream reconnects from the last byte on disk, up to {@code maxRetries} times in a row
+ * without progress, so readers only see one continuous stream. Servers that ignore Range (200 instead of
+ * 206) are handled by skipping the bytes already held.
+ */
+class ResumableDownloadStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableDownloadStream.class);
+
+    /** A status the server will keep returning, e.g. 404; retrying will not help. */
+    static final class HttpStatusException extends IOException {
+        private final int status;
+
+        HttpStatusException(int status, URI uri) {
+            super("HTTP " + status + " for " + uri);
+            this.status = status;
+        }
+
+        int getStatus() { return status; }
+    }
+
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final Path partFile;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+
+    private InputStream local;
+    private InputStream remote;
+    private OutputStream part;
+    private final byte[] single = new byte[1];
+
+    private volatile long downloaded;
+    private volatile long total = -1;
+    private final long resumedFrom;
+    private volatile int reconnects;
+    private boolean finished;
+
+    ResumableDownloadStream(HttpClient httpClient, URI uri, Path partFile, int maxRetries, Duration retryBackoff)
+            throws IOException {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.partFile = partFile;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.resumedFrom = Files.exists(partFile) ? Files.size(partFile) : 0;
+        this.downloaded = resumedFrom;
+        if (resumedFrom > 0) {
+            local = Files.newInputStream(partFile);
+            log.info("Resuming download of {} from byte {}", uri, resumedFrom);
+        }
+    }
+
+    /** Bytes saved to the part file so far, including any resumed prefix. */
+    long getDownloaded() { return downloaded; }
+
+    /** Full size of the remote file, or -1 until the server reports it. */
+    long getTotal() { return total; }
+
+    long getResumedFrom() { return resumedFrom; }
+
+    int getReconnects() { return reconnects; }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (local != null) {
+            int n = local.read(b, off, len);
+            if (n > 0) return n;
+            local.close();
+            local = null;
+        }
+        if (finished) return -1;
+
+        int failures = 0;
+        while (true) {
+            try {
+                if (remote == null) connect();
+                if (finished) return -1;
+                int n = remote.read(b, off, len);
+                if (n < 0) {
+                    if (total >= 0 && downloaded < total) {
+                        throw new IOException("Connection closed at byte " + downloaded + " of " + total);
+                    }
+                    finished = true;
+                    closeRemote();
+                    return -1;
+                }
+                part.write(b, off, n);
+                downloaded += n;
+                return n;
+            } catch (HttpStatusException | InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                closeRemote();
+                if (++failures > maxRetries) throw e;
+                reconnects++;
+                log.warn("Download of {} interrupted at byte {} ({}), reconnecting ({}/{})",
+                        uri, downloaded, e.getMessage(), failures, maxRetries);
+                sleep(retryBackoff.multipliedBy(failures));
+            }
+        }
+    }
+
+    /** Read the rest of the file to disk without handing it to anyone. */
+    void drain() throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (read(buffer, 0, buffer.length) >= 0) {
+            // the part file is written as a side effect
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (local != null) local.close();
+        closeRemote();
+    }
+
+    private void connect() throws IOException {
+        long offset = downloaded;
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(uri).timeout(Duration.ofMinutes(1)).GET();
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-");
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to " + uri);
+        }
+
+        int status = response.statusCode();
+        InputStream body = response.body();
+        if (status == 416 && offset > 0 && offset == contentRangeTotal(response)) {
+            // We already have every byte
+            body.close();
+            total = offset;
+            finished = true;
+            return;
+        }
+        if (status == 206) {
+            long start = contentRangeStart(response);
+            if (start != offset) {
+                body.close();
+                throw new IOException("Server resumed at byte " + start + " instead of " + offset);
+            }
+            total = contentRangeTotal(response);
+        } else if (status == 200) {
+            long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            total = length;
+            if (offset > 0) {
+                log.info("Server ignored Range for {}, skipping {} bytes already downloaded", uri, offset);
+                body.skipNBytes(offset);
+            }
+        } else {
+            body.close();
+            if (status >= 500 || status == 408 || status == 429) {
+                throw new IOException("HTTP " + status + " for " + uri);
+            }
+            throw new HttpStatusException(status, uri);
+        }
+
+        remote = body;
+        if (part == null) {
+            part = Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void closeRemote() {
+        try {
+            if (remote != null) remote.close();
+        } catch (IOException ignored) {}
+        remote = null;
+        try {
+            if (part != null) part.close();
+        } catch (IOException ignored) {}
+        part = null;
+    }
+
+    private static long contentRangeStart(HttpResponse<?> response) {
+        // Content-Range: bytes 100-199/200
+        String range = response.headers().firstValue("Content-Range").orElse("");
+        try {
+            int space = range.indexOf(' ');
+            return Long.parseLong(range.substring(space + 1, range.indexOf('-', space)).trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static long contentRangeTotal(HttpResponse<?> response) {
+        String range = response.headers().firstValue("Content-Range").orElse("");
+        int slash = range.indexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(Duration duration) throws IOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to reconnect");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.dota2analyzer.data.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Downloads through {@link DemDownloadService} from a local stub of a replay server. */
+class DemDownloadServiceTest {
+
+    private static final byte[] DEM = ParallelBzip2DecompressorTest.sampleData(400_000, 7);
+
+    @TempDir
+    Path dir;
+
+    private byte[] compressed;
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    // One response per request in order; once empty every request is served honouring Range
+    private final ConcurrentLinkedQueue<ResumableDownloadStreamTest.Response> responses = new ConcurrentLinkedQueue<>();
+    private DemDownloadService service;
+
+    @BeforeEach
+    void start() throws IOException {
+        compressed = ParallelBzip2DecompressorTest.compress(DEM, 1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            ResumableDownloadStreamTest.Response response = responses.poll();
+            if (response != null) {
+                response.send(exchange);
+            } else {
+                ResumableDownloadStreamTest.serveRange(exchange, compressed);
+            }
+        });
+        server.start();
+
+        URI uri = ResumableDownloadStreamTest.uri(server);
+        service = new DemDownloadService(null, null, new ReplayStore(dir, 0, null, null, Set.of()),
+                new ParallelBzip2Decompressor(2), null, 2, 3, Duration.ofMinutes(10), Duration.ofMillis(10)) {
+            @Override
+            Optional<URI> replayUri(long matchId) {
+                return Optional.of(uri);
+            }
+        };
+    }
+
+    @AfterEach
+    void stop() {
+        service.close();
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsAndDecompressesTheReplay() {
+        DemDownloadService.Download download = service.submit(1);
+
+        assertThat(download.getResult().join()).contains(dir.resolve("1.dem"));
+        assertThat(download.getStatus()).isEqualTo(DemDownloadService.Status.DONE);
+        assertThat(dir.resolve("1.dem")).hasBinaryContent(DEM);
+        assertThat(dir.resolve("1.dem.bz2.part")).doesNotExist();
+        assertThat(dir.resolve("1.dem.tmp")).doesNotExist();
+    }
+
+    @Test
+    void connectionCutMidBodyStillProducesTheWholeReplay() {
+        responses.add(exchange -> ResumableDownloadStreamTest.cutAfter(exchange, compressed, compressed.length / 2));
+
+        DemDownloadService.Download download = service.submit(2);
+
+        assertThat(download.getResult().join()).contains(dir.resolve("2.dem"));
+        assertThat(dir.resolve("2.dem")).hasBinaryContent(DEM);
+        assertThat(download.toMap()).containsEntry("reconnects", 1);
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void cachedReplayCompletesWithoutQueueing() throws IOException {
+        Files.write(dir.resolve("3.dem"), DEM);
+
+        DemDownloadService.Download download = service.submit(3);
+
+        assertThat(download.isFinished()).isTrue();
+        assertThat(download.getStatus()).isEqualTo(DemDownloadService.Status.DONE);
+        assertThat(download.getResult()).isCompletedWithValue(Optional.of(dir.resolve("3.dem")));
+        assertThat(service.getDownload(3)).isSameAs(download);
+        assertThat(requests).hasValue(0);
+    }
+
+    @Test
+    void missingReplayIsUnavailable() {
+        responses.add(exchange -> ResumableDownloadStreamTest.send(exchange, 404, new byte[0], null));
+
+        DemDownloadService.Download download = service.submit(4);
+
+        assertThat(download.getResult().join()).isEmpty();
+        assertThat(download.getStatus()).isEqualTo(DemDownloadService.Status.UNAVAILABLE);
+        assertThat(dir.resolve("4.dem.bz2.part")).doesNotExist();
+    }
+
+    @Test
+    void serverErrorKeepsThePartFileForTheNextAttempt() {
+        responses.add(exchange -> ResumableDownloadStreamTest.cutAfter(exchange, compressed, compressed.length / 2));
+        // Three retries after the cut, then four more when the failed parallel decode drains the stream
+        for (int i = 0; i < 7; i++) {
+            responses.add(exchange -> ResumableDownloadStreamTest.send(exchange, 503, new byte[0], null));
+        }
+
+        DemDownloadService.Download failed = service.submit(5);
+        assertThat(failed.getResult().join()).isEmpty();
+        assertThat(failed.getStatus()).isEqualTo(DemDownloadService.Status.FAILED);
+        assertThat(dir.resolve("5.dem.bz2.part")).exists();
+
+        // The retry picks up from the saved half
+        DemDownloadService.Download retried = service.submit(5);
+        assertThat(retried.getResult().join()).contains(dir.resolve("5.dem"));
+        assertThat(dir.resolve("5.dem")).hasBinaryContent(DEM);
+        assertThat(retried.toMap()).containsEntry("resumedFrom", (long) compressed.length / 2);
+    }
+}
@@ -0,0 +1,60 @@
+package com.dota2analyzer.data.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Wall time of {@link ParallelBzip2Decompressor} against {@link DemDownloadService#decompressSequential} on the
+ * same input: a real replay when {@code -Dbenchmark.file=/path/to/match.dem.bz2} is given, otherwise 64 MB of
+ * synthetic data at block size 9. Skipped in normal builds; run with
+ * {@code mvn -pl dota2-analyzer-common,dota2-analyzer-data test -Dtest=ParallelBzip2DecompressorBenchmark
+ * -Dbenchmark=true -Dsurefire.failIfNoSpecifiedTests=false}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ParallelBzip2DecompressorBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parallelAgainstSequential() throws Exception {
+        String file = System.getProperty("benchmark.file");
+        byte[] compressed = file != null
+                ? Files.readAllBytes(Path.of(file))
+                : ParallelBzip2DecompressorTest.compress(ParallelBzip2DecompressorTest.sampleData(64 << 20, 1), 9);
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("input %,d bytes compressed, %d threads%n", compressed.length, threads);
+
+        Path sequentialOut = dir.resolve("sequential.dem");
+        Path parallelOut = dir.resolve("parallel.dem");
+        // The first rounds warm up the JIT; the last one is the number to quote
+        try (ParallelBzip2Decompressor decompressor = new ParallelBzip2Decompressor(threads)) {
+            for (int round = 1; round <= ROUNDS; round++) {
+                long start = System.nanoTime();
+                DemDownloadService.decompressSequential(new ByteArrayInputStream(compressed), sequentialOut);
+                long sequentialNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long parallelBytes = decompressor.decompress(new ByteArrayInputStream(compressed), parallelOut);
+                long parallelNanos = System.nanoTime() - start;
+                long sequentialBytes = Files.size(sequentialOut);
+
+                assertThat(parallelBytes).isEqualTo(sequentialBytes);
+                System.out.printf("round %d: sequential %,d ms (%.1f MB/s), parallel %,d ms (%.1f MB/s), %.2fx%n",
+                        round, sequentialNanos / 1_000_000, sequentialBytes / (sequentialNanos / 1e3),
+                        parallelNanos / 1_000_000, parallelBytes / (parallelNanos / 1e3),
+                        (double) sequentialNanos / parallelNanos);
+            }
+        }
+        assertThat(Files.mismatch(sequentialOut, parallelOut)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,132 @@
+package com.dota2analyzer.data.service;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Round trips through the block splitter, checked against commons-compress decoding the same input. */
+class ParallelBzip2DecompressorTest {
+
+    @TempDir
+    Path dir;
+
+    /** Chunk sizes put chunk boundaries (and so the straddle handling in compact()) at many bit offsets. */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 4093, 1024 * 1024})
+    void multiBlockStreamMatchesSequentialDecode(int readChunk) throws IOException {
+        // 100 KB blocks, so about 25 of them, ending at arbitrary bit offsets
+        byte[] compressed = compress(sampleData(2_500_000, 1), 1);
+
+        assertRoundTrip(compressed, readChunk);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 65536, 1024 * 1024})
+    void concatenatedStreamsMatchSequentialDecode(int readChunk) throws IOException {
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        concatenated.write(compress(sampleData(450_000, 2), 1));
+        concatenated.write(compress(sampleData(30_000, 3), 9));
+        concatenated.write(compress(new byte[0], 9));
+        concatenated.write(compress(sampleData(1_200_000, 4), 2));
+
+        assertRoundTrip(concatenated.toByteArray(), readChunk);
+    }
+
+    @Test
+    void smallAndEmptyStreams() throws IOException {
+        assertRoundTrip(compress("hello".getBytes(StandardCharsets.US_ASCII), 9), 1024);
+        assertRoundTrip(compress(new byte[0], 9), 1024);
+    }
+
+    @Test
+    void truncatedStreamFails() throws IOException {
+        byte[] compressed = compress(sampleData(500_000, 5), 1);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        try (ParallelBzip2Decompressor decompressor = new ParallelBzip2Decompressor(2)) {
+            assertThatThrownBy(() -> decompressor.decompress(new ByteArrayInputStream(truncated), dir.resolve("out")))
+                    .isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void nonBzip2InputFails() {
+        try (ParallelBzip2Decompressor decompressor = new ParallelBzip2Decompressor(2)) {
+            assertThatThrownBy(() -> decompressor.decompress(
+                    new ByteArrayInputStream("PBDEMS2\0not bzip2".getBytes(StandardCharsets.US_ASCII)), dir.resolve("out")))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("Not a bzip2 stream");
+        }
+    }
+
+    @Test
+    void interruptSurfacesAsInterruptedIOException() throws IOException {
+        byte[] compressed = compress(sampleData(1_000_000, 6), 1);
+
+        try (ParallelBzip2Decompressor decompressor = new ParallelBzip2Decompressor(1)) {
+            Thread.currentThread().interrupt();
+            assertThatThrownBy(() -> decompressor.decompress(new ByteArrayInputStream(compressed), dir.resolve("out")))
+                    .isInstanceOf(InterruptedIOException.class);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private void assertRoundTrip(byte[] compressed, int readChunk) throws IOException {
+        byte[] expected;
+        try (BZip2CompressorInputStream reference = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            expected = reference.readAllBytes();
+        }
+
+        Path out = dir.resolve("out-" + readChunk);
+        long written;
+        try (ParallelBzip2Decompressor decompressor = new ParallelBzip2Decompressor(3, readChunk)) {
+            written = decompressor.decompress(new ByteArrayInputStream(compressed), out);
+        }
+
+        assertThat(written).isEqualTo(expected.length);
+        assertThat(Files.readAllBytes(out)).isEqualTo(expected);
+    }
+
+    static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BZip2CompressorOutputStream bz2 = new BZip2CompressorOutputStream(bytes, blockSize)) {
+            bz2.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Text-like runs with stretches of random bytes, so blocks compress to uneven bit lengths. */
+    static byte[] sampleData(int size, long seed) {
+        Random random = new Random(seed);
+        String[] words = {"npc_dota_hero_axe", "CDOTA_Unit_Hero", "m_iNetWorth", "tick", "ward_observer",
+                "DOTA_COMBATLOG_DAMAGE", "modifier_", "0", "1", " ", "\n"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        while (out.size() < size) {
+            if (random.nextInt(20) == 0) {
+                byte[] noise = new byte[random.nextInt(4096)];
+                random.nextBytes(noise);
+                out.writeBytes(noise);
+            } else {
+                out.writeBytes(words[random.nextInt(words.length)].getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        return Arrays.copyOf(out.toByteArray(), size);
+    }
+}
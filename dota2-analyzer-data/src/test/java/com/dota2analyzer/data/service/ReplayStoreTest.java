@@ -0,0 +1,82 @@
+package com.dota2analyzer.data.service;
+
+import com.dota2analyzer.core.model.opendota.RecentMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordMeasuresTheReplayAndTheParseCachesSeenOnDisk() throws Exception {
+        write("1.dem", 1000);
+        write("1.demparse", 200);
+        write("1.laning@30.demparse", 100);
+        write("1.dem.bz2.part", 5000);
+        ReplayStore store = new ReplayStore(dir, 0, null, null, Set.of());
+        assertThat(store.getStats()).containsEntry("matches", 1).containsEntry("usedBytes", 1300L);
+
+        write("1.demparse", 400);
+        write("2.dem", 500);
+        store.record(1);
+        store.record(2);
+
+        assertThat(store.getStats()).containsEntry("matches", 2).containsEntry("usedBytes", 2000L);
+    }
+
+    @Test
+    void evictionDeletesEveryFileOfTheMatch() throws Exception {
+        write("1.dem", 1000);
+        write("1.full.demparse", 300);
+        ReplayStore store = new ReplayStore(dir, 2000, null, null, Set.of());
+
+        Thread.sleep(20);
+        write("2.dem", 1000);
+        store.record(2);
+
+        assertThat(dir.resolve("1.dem")).doesNotExist();
+        assertThat(dir.resolve("1.full.demparse")).doesNotExist();
+        assertThat(dir.resolve("2.dem")).exists();
+        assertThat(store.getStats()).containsEntry("usedBytes", 1000L).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    void matchesPinnedBySyncAreKept() throws Exception {
+        write("1.dem", 1000);
+        write("3.dem", 1000);
+        ReplayStore store = new ReplayStore(dir, 2500, null, null, Set.of(42L));
+        store.reconcile();
+        store.pin(42, List.of(match(1)));
+        // Not a permanent account, so ignored
+        store.pin(7, List.of(match(3)));
+
+        Thread.sleep(20);
+        write("2.dem", 1000);
+        store.record(2);
+
+        assertThat(dir.resolve("1.dem")).exists();
+        assertThat(dir.resolve("2.dem")).exists();
+        assertThat(dir.resolve("3.dem")).doesNotExist();
+        assertThat(store.getStats()).containsEntry("pinned", 1);
+    }
+
+    private void write(String name, int bytes) throws IOException {
+        Files.write(dir.resolve(name), new byte[bytes]);
+    }
+
+    private static RecentMatch match(long matchId) {
+        RecentMatch match = new RecentMatch();
+        match.setMatchId(matchId);
+        return match;
+    }
+}
@@ -0,0 +1,216 @@
+package com.dota2analyzer.data.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Drives {@link ResumableDownloadStream} against a local stub of a replay server. */
+class ResumableDownloadStreamTest {
+
+    interface Response {
+        void send(HttpExchange exchange) throws IOException;
+    }
+
+    private static final byte[] FILE = randomBytes(300_000);
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private HttpClient httpClient;
+    private Path partFile;
+    // Range header of each request, "" when there was none
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    // One response per request in order; once empty every request is served from FILE honouring Range
+    private final ConcurrentLinkedQueue<Response> responses = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range != null ? range : "");
+            Response response = responses.poll();
+            if (response != null) {
+                response.send(exchange);
+            } else {
+                serveRange(exchange, FILE);
+            }
+        });
+        server.start();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        partFile = dir.resolve("1.dem.bz2.part");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        httpClient.close();
+    }
+
+    @Test
+    void connectionCutMidBodyResumesFromTheLastByte() throws IOException {
+        responses.add(exchange -> cutAfter(exchange, FILE, 100_000));
+
+        try (ResumableDownloadStream stream = open()) {
+            assertThat(stream.readAllBytes()).isEqualTo(FILE);
+            assertThat(stream.getReconnects()).isEqualTo(1);
+        }
+        assertThat(ranges).hasSize(2);
+        assertThat(ranges.get(0)).isEmpty();
+        assertThat(ranges.get(1)).startsWith("bytes=").endsWith("-");
+        assertThat(Files.readAllBytes(partFile)).isEqualTo(FILE);
+    }
+
+    @Test
+    void partFileResumesWithA206() throws IOException {
+        Files.write(partFile, Arrays.copyOf(FILE, 120_000));
+
+        try (ResumableDownloadStream stream = open()) {
+            assertThat(stream.getResumedFrom()).isEqualTo(120_000);
+            assertThat(stream.readAllBytes()).isEqualTo(FILE);
+            assertThat(stream.getTotal()).isEqualTo(FILE.length);
+        }
+        assertThat(ranges).containsExactly("bytes=120000-");
+        assertThat(Files.readAllBytes(partFile)).isEqualTo(FILE);
+    }
+
+    @Test
+    void serverIgnoringRangeSkipsTheBytesAlreadyHeld() throws IOException {
+        Files.write(partFile, Arrays.copyOf(FILE, 120_000));
+        responses.add(exchange -> send(exchange, 200, FILE, null));
+
+        try (ResumableDownloadStream stream = open()) {
+            assertThat(stream.readAllBytes()).isEqualTo(FILE);
+        }
+        assertThat(ranges).containsExactly("bytes=120000-");
+        assertThat(Files.readAllBytes(partFile)).isEqualTo(FILE);
+    }
+
+    @Test
+    void rangeNotSatisfiableAtEndOfFileFinishes() throws IOException {
+        Files.write(partFile, FILE);
+        responses.add(exchange -> send(exchange, 416, new byte[0], "bytes */" + FILE.length));
+
+        try (ResumableDownloadStream stream = open()) {
+            assertThat(stream.readAllBytes()).isEqualTo(FILE);
+            assertThat(stream.getTotal()).isEqualTo(FILE.length);
+        }
+        assertThat(ranges).containsExactly("bytes=" + FILE.length + "-");
+    }
+
+    @Test
+    void serverErrorsAreRetried() throws IOException {
+        responses.add(exchange -> send(exchange, 503, new byte[0], null));
+        responses.add(exchange -> send(exchange, 502, new byte[0], null));
+
+        try (ResumableDownloadStream stream = open()) {
+            assertThat(stream.readAllBytes()).isEqualTo(FILE);
+            assertThat(stream.getReconnects()).isEqualTo(2);
+        }
+        assertThat(ranges).hasSize(3);
+    }
+
+    @Test
+    void serverErrorsBeyondTheRetryLimitFail() {
+        for (int i = 0; i < 4; i++) {
+            responses.add(exchange -> send(exchange, 500, new byte[0], null));
+        }
+
+        assertThatThrownBy(() -> {
+            try (ResumableDownloadStream stream = open()) {
+                stream.readAllBytes();
+            }
+        }).isInstanceOf(IOException.class).hasMessageContaining("HTTP 500");
+        assertThat(ranges).hasSize(4);
+    }
+
+    @Test
+    void missingFileFailsWithoutRetrying() {
+        responses.add(exchange -> send(exchange, 404, new byte[0], null));
+
+        assertThatThrownBy(() -> {
+            try (ResumableDownloadStream stream = open()) {
+                stream.readAllBytes();
+            }
+        }).isInstanceOfSatisfying(ResumableDownloadStream.HttpStatusException.class,
+                e -> assertThat(e.getStatus()).isEqualTo(404));
+        assertThat(ranges).hasSize(1);
+    }
+
+    private ResumableDownloadStream open() throws IOException {
+        return new ResumableDownloadStream(httpClient, uri(server), partFile, 3, Duration.ofMillis(10));
+    }
+
+    static URI uri(HttpServer server) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/replay.dem.bz2");
+    }
+
+    /** 206 for a Range request, 200 otherwise, the way Valve's replay servers answer. */
+    static void serveRange(HttpExchange exchange, byte[] file) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            send(exchange, 200, file, null);
+            return;
+        }
+        int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        if (start >= file.length) {
+            send(exchange, 416, new byte[0], "bytes */" + file.length);
+            return;
+        }
+        send(exchange, 206, Arrays.copyOfRange(file, start, file.length),
+                "bytes " + start + "-" + (file.length - 1) + "/" + file.length);
+    }
+
+    /** Announce the whole file, send the first {@code bytes} of it and drop the connection. */
+    static void cutAfter(HttpExchange exchange, byte[] file, int bytes) throws IOException {
+        exchange.sendResponseHeaders(200, file.length);
+        OutputStream body = exchange.getResponseBody();
+        body.write(file, 0, bytes);
+        body.flush();
+        try {
+            // Closing short of Content-Length makes the server drop the connection
+            exchange.close();
+        } catch (RuntimeException ignored) {
+            // reported as "insufficient bytes written"
+        }
+    }
+
+    static void send(HttpExchange exchange, int status, byte[] body, String contentRange) throws IOException {
+        try (exchange) {
+            if (contentRange != null) {
+                exchange.getResponseHeaders().add("Content-Range", contentRange);
+            }
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -34,8 +34,12 @@ export async function preloadMatches(accountId, count = 100) {
   return data
 }
 
-export async function fetchPreloadStatus(accountId) {
-  const { data } = await api.get(`/players/${accountId}/preload-status`)
+// With waitMs the server holds the request until progress passes `since`, returning rows after `after`
+export async function fetchPreloadStatus(accountId, { since = -1, after = 0, waitMs = 0 } = {}) {
+  const { data } = await api.get(`/players/${accountId}/preload-status`, {
+    params: { since, after, waitMs },
+    timeout: waitMs + 20000
+  })
   return data
 }
 